@@ -0,0 +1,48 @@
+package de.ovgu.spldev.varied;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a voting phase from the first to the deciding vote, tallying after every vote like the
+ * collaborative session does. This lives in the server's package as voting strategies are package-private.
+ * Votes are spread over three versions, except for consensus, where dissent would end the phase early.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VotingPhaseBenchmark {
+    @Param({"plurality", "majority", "consensus"})
+    public String votingStrategy;
+
+    @Param({"10", "100", "1000"})
+    public int numberOfVoters;
+
+    private List<Collaborator> collaborators = new ArrayList<>();
+    private String[] versionIDs = {UUID.randomUUID().toString(), UUID.randomUUID().toString(), UUID.randomUUID().toString()};
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < numberOfVoters; i++)
+            collaborators.add(new Collaborator(UUID.randomUUID(), "Voter " + i, null));
+    }
+
+    @Benchmark
+    public String vote() {
+        VotingPhase votingPhase = new VotingPhase(VotingPhase.VotingStrategy.createInstance(
+                votingStrategy, false, collaborators, collaborators));
+        String electedVersionID = null;
+        for (int i = 0; i < collaborators.size() && electedVersionID == null; i++) {
+            votingPhase.vote(collaborators.get(i), versionIDs[votingStrategy.equals("consensus") ? 0 : i % versionIDs.length]);
+            electedVersionID = votingPhase.getElectedVersionID();
+        }
+        return electedVersionID;
+    }
+}
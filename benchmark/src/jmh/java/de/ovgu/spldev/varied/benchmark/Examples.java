@@ -0,0 +1,29 @@
+package de.ovgu.spldev.varied.benchmark;
+
+import de.ovgu.spldev.varied.ProjectManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Feature models that benchmarks run on, given as project/artifact like in the server's artifact paths.
+ * FeatureIDE examples are fetched once and then served from the remote artifact cache.
+ */
+class Examples {
+    static final String SMALL = "Examples/uvr2web";
+    static final String MEDIUM = "FeatureIDE/Automotive01";
+    static final String LARGE = "FeatureIDE/Linux_2.6.33.3";
+
+    static String getSource(String example) throws IOException {
+        String[] parts = example.split("/");
+        if (parts.length != 2)
+            throw new RuntimeException("invalid example " + example);
+        if (parts[0].equals("Examples"))
+            return new String(Files.readAllBytes(ProjectManager.getResourcePath("examples/" + parts[1] + ".xml")),
+                    StandardCharsets.UTF_8);
+        if (parts[0].equals("FeatureIDE"))
+            return ProjectManager.getFeatureIDEExampleSource(parts[1]);
+        throw new RuntimeException("unknown example project " + parts[0]);
+    }
+}
@@ -0,0 +1,45 @@
+package de.ovgu.spldev.varied.benchmark;
+
+import clojure.lang.APersistentMap;
+import de.ovgu.featureide.fm.core.base.IFeatureModel;
+import de.ovgu.spldev.varied.kernel.FeatureModelFormat;
+import de.ovgu.spldev.varied.kernel.Kernel;
+import de.ovgu.spldev.varied.util.FeatureModelUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting feature models into the kernel's representation and back. The kernel's combined
+ * effect (including the children cache) is converted back, as when exporting a collaborative session.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FeatureModelFormatBenchmark {
+    @Param({Examples.SMALL, Examples.MEDIUM, Examples.LARGE})
+    public String example;
+
+    private IFeatureModel featureModel;
+    private APersistentMap combinedEffect;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        featureModel = FeatureModelUtils.loadFeatureModel(Examples.getSource(example), "model.xml");
+        combinedEffect = new Kernel(null, FeatureModelFormat.toKernel(featureModel)).getCombinedEffect();
+    }
+
+    @Benchmark
+    public APersistentMap toKernel() {
+        return FeatureModelFormat.toKernel(featureModel);
+    }
+
+    @Benchmark
+    public IFeatureModel toFeatureModel() {
+        return FeatureModelFormat.combinedEffectToFeatureModel(combinedEffect);
+    }
+}
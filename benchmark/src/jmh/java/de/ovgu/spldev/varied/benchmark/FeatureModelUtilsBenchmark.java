@@ -0,0 +1,67 @@
+package de.ovgu.spldev.varied.benchmark;
+
+import de.ovgu.featureide.fm.core.base.IFeature;
+import de.ovgu.featureide.fm.core.base.IFeatureModel;
+import de.ovgu.spldev.varied.util.FeatureModelUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading, serializing and renaming FeatureIDE feature models. The renamingsManager
+ * benchmark renames every feature on its own, as FeatureModelUtils used to, for comparison with
+ * the bulk renaming. Renaming and serializing rewrite constraint literals in place, which clones
+ * share with their original, so these benchmarks work on a freshly loaded feature model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FeatureModelUtilsBenchmark {
+    @Param({Examples.SMALL, Examples.MEDIUM, Examples.LARGE})
+    public String example;
+
+    private String source;
+    private IFeatureModel freshFeatureModel;
+    private Map<String, String> renamings = new HashMap<>();
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        source = Examples.getSource(example);
+        IFeatureModel featureModel = FeatureModelUtils.loadFeatureModel(source, "model.xml");
+        for (IFeature feature : featureModel.getFeatures())
+            renamings.put(feature.getName(), "renamed-" + feature.getName());
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        freshFeatureModel = FeatureModelUtils.loadFeatureModel(source, "model.xml");
+    }
+
+    @Benchmark
+    public IFeatureModel loadFeatureModel() {
+        return FeatureModelUtils.loadFeatureModel(source, "model.xml");
+    }
+
+    @Benchmark
+    public String serializeFeatureModel() {
+        return FeatureModelUtils.serializeFeatureModel(freshFeatureModel);
+    }
+
+    @Benchmark
+    public IFeatureModel bulkRename() {
+        FeatureModelUtils.renameFeatures(freshFeatureModel, renamings);
+        return freshFeatureModel;
+    }
+
+    @Benchmark
+    public IFeatureModel renamingsManager() {
+        renamings.forEach((oldName, newName) -> freshFeatureModel.getRenamingsManager().renameFeature(oldName, newName));
+        return freshFeatureModel;
+    }
+}
@@ -0,0 +1,66 @@
+package de.ovgu.spldev.varied.benchmark;
+
+import clojure.lang.APersistentMap;
+import de.ovgu.featureide.fm.core.base.IFeatureModel;
+import de.ovgu.spldev.varied.kernel.ClientSite;
+import de.ovgu.spldev.varied.kernel.FeatureModelFormat;
+import de.ovgu.spldev.varied.kernel.Kernel;
+import de.ovgu.spldev.varied.util.FeatureModelUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures forwarding operations through the server's kernel, depending on how many operations its history
+ * buffer already holds (i.e., how long the kernel has not been garbage-collected). As forwarding grows the
+ * history buffer, every iteration starts with a fresh kernel and forwards a fixed batch of operations,
+ * so the score is the time for forwarding {@link #OPERATIONS} operations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = KernelBenchmark.OPERATIONS)
+@Measurement(iterations = 10, batchSize = KernelBenchmark.OPERATIONS)
+@Fork(1)
+public class KernelBenchmark {
+    static final int OPERATIONS = 100;
+
+    @Param({Examples.MEDIUM})
+    public String example;
+
+    @Param({"0", "100", "1000"})
+    public int historySize;
+
+    private APersistentMap initialFeatureModel;
+    private String rootID;
+    private Kernel kernel;
+    private String[] messages = new String[OPERATIONS];
+    private int nextMessage;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        IFeatureModel featureModel = FeatureModelUtils.loadFeatureModel(Examples.getSource(example), "model.xml");
+        initialFeatureModel = FeatureModelFormat.toKernel(featureModel);
+        // the kernel identifies features by their names
+        rootID = featureModel.getStructure().getRoot().getFeature().getName();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        kernel = new Kernel(null, initialFeatureModel);
+        UUID siteID = UUID.randomUUID();
+        ClientSite clientSite = new ClientSite(siteID, kernel.siteJoined(siteID)[0]);
+        for (int i = 0; i < historySize; i++)
+            kernel.forwardMessage(clientSite.generateCreateFeatureBelow(rootID));
+        for (int i = 0; i < OPERATIONS; i++)
+            messages[i] = clientSite.generateCreateFeatureBelow(rootID);
+        nextMessage = 0;
+    }
+
+    @Benchmark
+    public Object[] forwardMessage() {
+        return kernel.forwardMessage(messages[nextMessage++]);
+    }
+}
@@ -0,0 +1,182 @@
+package de.ovgu.spldev.varied.benchmark;
+
+import com.google.gson.*;
+import de.ovgu.featureide.fm.core.base.IFeatureModel;
+import de.ovgu.spldev.varied.kernel.ClientSite;
+import de.ovgu.spldev.varied.kernel.FeatureModelFormat;
+import de.ovgu.spldev.varied.kernel.Kernel;
+import de.ovgu.spldev.varied.messaging.Api;
+import de.ovgu.spldev.varied.messaging.Message;
+import de.ovgu.spldev.varied.messaging.MessageSerializer;
+import de.ovgu.spldev.varied.util.FeatureModelUtils;
+import de.ovgu.spldev.varied.util.StringUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding every message type the server sends and decoding every message type it receives.
+ * Messages that carry feature models or kernel data (e.g., INITIALIZE, SNAPSHOT and KERNEL) are filled
+ * with real payloads for the example. The server can not decode messages it only sends, so these are
+ * instantiated from the same JSON with a separate GSON instance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MessageSerializerBenchmark {
+    private static final MessageSerializer.MessageEncoder encoder = new MessageSerializer.MessageEncoder();
+    private static final MessageSerializer.MessageDecoder decoder = new MessageSerializer.MessageDecoder();
+    private static final Gson gson = new GsonBuilder()
+            .excludeFieldsWithoutExposeAnnotation()
+            .registerTypeAdapter(Message.Type.class, (JsonDeserializer<Message.Type>) (json, type, context) -> {
+                try {
+                    return new Message.Type(json.getAsString());
+                } catch (Message.InvalidMessageException e) {
+                    throw new JsonParseException(e);
+                }
+            })
+            .create();
+
+    @State(Scope.Benchmark)
+    public static class Payloads {
+        @Param({Examples.MEDIUM})
+        public String example;
+
+        String source, context, combinedEffect, operation;
+        long version;
+        UUID siteID = UUID.randomUUID();
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            source = Examples.getSource(example);
+            IFeatureModel featureModel = FeatureModelUtils.loadFeatureModel(source, "model.xml");
+            Kernel kernel = new Kernel(null, FeatureModelFormat.toKernel(featureModel));
+            context = kernel.siteJoined(siteID)[0];
+            version = kernel.getVersion();
+            combinedEffect = Kernel.encode(kernel.getSnapshot());
+            // the kernel identifies features by their names
+            String rootID = featureModel.getStructure().getRoot().getFeature().getName();
+            operation = new ClientSite(siteID, context).generateCreateFeatureBelow(rootID);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class EncodableMessage {
+        @Param({"ERROR", "ADD_ARTIFACT", "REMOVE_ARTIFACT", "EXPORT_ARTIFACT", "LIST_VERSIONS", "DIFF_VERSIONS",
+                "SEARCH_FEATURES", "COLLABORATOR_JOINED", "COLLABORATOR_LEFT", "INITIALIZE", "SNAPSHOT", "ANALYSIS",
+                "KERNEL", "VOTERS", "VOTE", "RESOLUTION_OUTCOME"})
+        public String type;
+
+        Message message;
+
+        @Setup(Level.Trial)
+        public void setUp(Payloads payloads) throws ClassNotFoundException {
+            message = (Message) gson.fromJson(createMessage(type, payloads),
+                    Class.forName(StringUtils.toClassName(Api.class.getName() + "$", type)));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DecodableMessage {
+        @Param({"RESET", "ADD_ARTIFACT", "REMOVE_ARTIFACT", "LIST_ARTIFACTS", "EXPORT_ARTIFACT", "FORK_ARTIFACT",
+                "LIST_VERSIONS", "FETCH_VERSION", "DIFF_VERSIONS", "SEARCH_FEATURES", "SET_USER_PROFILE",
+                "JOIN_REQUEST", "LEAVE_REQUEST", "KERNEL", "VOTE", "SET_VOTING_STRATEGY"})
+        public String type;
+
+        String json;
+
+        @Setup(Level.Trial)
+        public void setUp(Payloads payloads) {
+            json = createMessage(type, payloads).toString();
+        }
+    }
+
+    private static JsonObject createArtifactPath(String example) {
+        String[] parts = example.split("/");
+        JsonObject artifactPath = new JsonObject();
+        artifactPath.addProperty("project", parts[0]);
+        artifactPath.addProperty("artifact", parts[1]);
+        return artifactPath;
+    }
+
+    private static JsonObject createCollaborator(UUID siteID) {
+        JsonObject collaborator = new JsonObject();
+        collaborator.addProperty("siteID", siteID.toString());
+        collaborator.addProperty("name", "Benchmarking Collaborator");
+        return collaborator;
+    }
+
+    private static JsonObject createMessage(String type, Payloads payloads) {
+        JsonObject message = new JsonObject();
+        message.addProperty("type", type);
+        message.add("artifactPath", createArtifactPath(payloads.example));
+        switch (type) {
+            case "ERROR":
+                message.addProperty("error", new RuntimeException("invalid message").toString());
+                break;
+            case "ADD_ARTIFACT":
+                JsonArray artifactPaths = new JsonArray();
+                artifactPaths.add(createArtifactPath(payloads.example));
+                message.add("artifactPaths", artifactPaths);
+                message.addProperty("source", payloads.source);
+                break;
+            case "EXPORT_ARTIFACT":
+                message.addProperty("format", FeatureModelUtils.XML_FORMAT);
+                message.addProperty("data", payloads.source);
+                break;
+            case "FORK_ARTIFACT":
+                message.add("forkArtifactPath", createArtifactPath(payloads.example + "-fork"));
+                break;
+            case "SEARCH_FEATURES":
+                message.addProperty("query", "engine");
+                break;
+            case "COLLABORATOR_JOINED":
+            case "COLLABORATOR_LEFT":
+                message.add("collaborator", createCollaborator(payloads.siteID));
+                break;
+            case "SET_USER_PROFILE":
+                message.addProperty("name", "Benchmarking Collaborator");
+                break;
+            case "INITIALIZE":
+                message.addProperty("context", payloads.context);
+                break;
+            case "SNAPSHOT":
+                message.addProperty("version", payloads.version);
+                message.addProperty("combinedEffect", payloads.combinedEffect);
+                break;
+            case "KERNEL":
+                message.addProperty("message", payloads.operation);
+                break;
+            case "VOTERS":
+                JsonArray siteIDs = new JsonArray();
+                siteIDs.add(payloads.siteID.toString());
+                message.add("siteIDs", siteIDs);
+                break;
+            case "VOTE":
+                message.addProperty("siteID", payloads.siteID.toString());
+                message.addProperty("versionID", UUID.randomUUID().toString());
+                break;
+            case "RESOLUTION_OUTCOME":
+                message.addProperty("versionID", UUID.randomUUID().toString());
+                break;
+            case "SET_VOTING_STRATEGY":
+                message.addProperty("votingStrategy", "consensus");
+                break;
+        }
+        return message;
+    }
+
+    @Benchmark
+    public String encode(EncodableMessage encodableMessage) {
+        return encoder.encode(encodableMessage.message);
+    }
+
+    @Benchmark
+    public Message decode(DecodableMessage decodableMessage) {
+        return decoder.decode(decodableMessage.json);
+    }
+}
@@ -31,8 +31,10 @@ const constants = {
         }
     },
     server: {
-        // WebSocket URI to connect to
-        webSocket: (siteID = 'initialize') => `ws://${process.env.REACT_APP_SERVER || window.location.host}/websocket/${siteID}`
+        // WebSocket URI to connect to, the catalog version limits the artifact listing to changes since then
+        webSocket: (siteID = 'initialize', catalogVersion?: number) =>
+            `ws://${process.env.REACT_APP_SERVER || window.location.host}/websocket/${siteID}` +
+            (typeof catalogVersion === 'number' ? `?catalogVersion=${catalogVersion}` : '')
     },
     helpers: {
         withDimensions: {
@@ -67,7 +67,7 @@ if (!window.name)
         // (redux-persist white/blacklist does not work for some reason)
         (inboundState, key) => initialState[key],
         (outboundState, key) => outboundState,
-        {'whitelist': ['overlay', 'overlayProps', 'collaborativeSessions', 'artifactPaths']}
+        {'whitelist': ['overlay', 'overlayProps', 'collaborativeSessions', 'artifactPaths', 'catalogVersion']}
     );
     const persistedReducer = persistReducer<State, Action>({
         key: 'root',
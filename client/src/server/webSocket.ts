@@ -33,6 +33,12 @@ function getSiteID() {
     return state && state.myself ? state.myself.siteID : 'initialize';
 }
 
+function getCatalogVersion() {
+    const state: State | undefined =
+        (window as any).app && (window as any).app.store && (window as any).app.store.getState();
+    return state ? state.catalogVersion : undefined;
+}
+
 export function isSimulateOffline() {
     const state: State | undefined =
         (window as any).app && (window as any).app.store && (window as any).app.store.getState();
@@ -54,7 +60,7 @@ const getWebSocket = ((): () => Promise<Sockette> => {
 
     function connect(): Promise<Sockette> {
         return promise = new Promise((resolve, reject) => {
-            const url = constants.server.webSocket(getSiteID());
+            const url = constants.server.webSocket(getSiteID(), getCatalogVersion());
             logger.logTagged({tag}, () => `connecting to ${url}`);
 
             if (isSimulateOffline()) {
@@ -82,6 +88,8 @@ const getWebSocket = ((): () => Promise<Sockette> => {
 
                 onreconnect() {
                     // TODO: notify user of reconnect
+                    // we already know the artifacts up to our catalog version, so only request changes
+                    const url = constants.server.webSocket(getSiteID(), getCatalogVersion());
                     logger.logTagged({tag}, () => `reconnect to ${url}`);
                     return url;
                 },
@@ -47,6 +47,11 @@ function getNewCollaborativeSessions(state: State, artifactPath: ArtifactPath,
         replacementFn);
 }
 
+// the server includes the catalog version in artifact listings, so we can ask for changes only when reconnecting
+function getNewCatalogVersion(state: State, catalogVersion?: number): number | undefined {
+    return typeof catalogVersion === 'number' ? catalogVersion : state.catalogVersion;
+}
+
 function removeObsoleteFeaturesFromFeatureList(state: State, artifactPath: ArtifactPath, key: string): State {
     const featureIDList = getCollaborativeSession(state, artifactPath)[key],
         actualFeatureIDs = getFeatureModel(state, artifactPath)!.getActualFeatureIDs(),
@@ -171,14 +176,16 @@ function serverReceiveReducer(state: State, action: Action): State {
                         }));
 
             case MessageType.ADD_ARTIFACT:
-                return getNewState(state, 'artifactPaths',
-                    setAdd(state.artifactPaths, action.payload.artifactPaths,
-                        artifactPath => artifactPath, isArtifactPathEqual));
+                return getNewState(state,
+                    'artifactPaths', setAdd(state.artifactPaths, action.payload.artifactPaths,
+                        artifactPath => artifactPath, isArtifactPathEqual),
+                    'catalogVersion', getNewCatalogVersion(state, action.payload.catalogVersion));
 
             case MessageType.REMOVE_ARTIFACT:
-                return getNewState(state, 'artifactPaths', setRemove(
-                    state.artifactPaths, action.payload.artifactPath!,
-                    artifactPath => artifactPath, isArtifactPathEqual));
+                return getNewState(state,
+                    'artifactPaths', setRemove(state.artifactPaths, action.payload.artifactPath!,
+                        artifactPath => artifactPath, isArtifactPathEqual),
+                    'catalogVersion', getNewCatalogVersion(state, action.payload.catalogVersion));
 
             case MessageType.EXPORT_ARTIFACT:
                 saveAs(
@@ -39,7 +39,8 @@ export interface State {
     overlayProps: OverlayProps
     myself?: Collaborator,
     collaborativeSessions: CollaborativeSession[],
-    artifactPaths: ArtifactPath[]
+    artifactPaths: ArtifactPath[],
+    catalogVersion?: number
 };
 
 export const initialState: State = {
@@ -48,7 +49,8 @@ export const initialState: State = {
     overlayProps: {},
     myself: undefined,
     collaborativeSessions: [],
-    artifactPaths: []
+    artifactPaths: [],
+    catalogVersion: undefined
 };
 
 export const initialFeatureDiagramCollaborativeSessionState =
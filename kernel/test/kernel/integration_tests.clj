@@ -3,6 +3,7 @@
             [kernel.core.compound-operation :as CO]
             [kernel.core.history-buffer :as HB]
             [kernel.core.feature-model :as FM]
+            [kernel.helpers :as helpers]
             [kernel.fixtures :refer :all]
             [kernel.simulator :refer :all]))
 
@@ -521,4 +522,25 @@
           _ (is (not (contains? ((HB/lookup (HB :server) (A1 :ID)) :VC) :A)))
           _ (receive! :B LA)
           _ (is (not (contains? ((HB/lookup (HB :server) (A1 :ID)) :VC) :A)))
-          _ (is-sync)])))
\ No newline at end of file
+          _ (is-sync)])))
+
+(deftest interning
+  (testing "only identifiers in received operations are interned"
+    (initialize-star-topology! (example-FM))
+    (let [_JA (join! :A)
+          A1 (generate! :A #(CO/create-feature-below % :Eclipse))
+          ID (CO-created-ID A1)
+          pool (atom {})
+          intern-fn #(or (@pool %) (do (swap! pool assoc % %) %))
+          _ (intern-fn ID)
+          ; decoding yields fresh copies of all strings
+          A1' (helpers/decode (helpers/encode A1))
+          _ (is (not (identical? (CO-created-ID A1') ID)))
+          _ (is (identical? (CO/intern-IDs A1') A1'))
+          A1'' (binding [helpers/*intern-fn* intern-fn] (CO/intern-IDs A1'))
+          HA (generate-heartbeat! :A)
+          HA' (binding [helpers/*intern-fn* intern-fn] (CO/intern-IDs HA))]
+      (is (= A1'' A1))
+      (is (identical? (CO-created-ID A1'') ID))
+      (is (= (set (keys @pool)) #{ID (A1 :ID)}))
+      (is (identical? HA' HA)))))
@@ -0,0 +1,177 @@
+package de.ovgu.spldev.varied;
+
+import clojure.lang.APersistentMap;
+import de.ovgu.featureide.fm.core.FeatureModelAnalyzer;
+import de.ovgu.featureide.fm.core.base.IFeature;
+import de.ovgu.featureide.fm.core.base.IFeatureModel;
+import de.ovgu.spldev.varied.kernel.FeatureModelFormat;
+import de.ovgu.spldev.varied.kernel.IncrementalAnalyzer;
+import de.ovgu.spldev.varied.kernel.Kernel;
+import de.ovgu.spldev.varied.kernel.Keywords;
+import org.pmw.tinylog.Logger;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Analyzes feature models in the background after they have been edited.
+ * Analyses work on immutable kernel snapshots, so they do not hold the kernel lock. Requests are
+ * debounced per session, so a burst of operations results in a single analysis of the latest
+ * snapshot, and runs for outdated snapshots are cancelled. With variED.incrementalAnalysis, validity and dead
+ * features are computed with an incremental solver that each session keeps across its analyses.
+ */
+public class AnalysisService {
+    // created eagerly, as it is accessed from several threads (its pool only starts threads when needed)
+    private static final AnalysisService instance = new AnalysisService(
+            Integer.getInteger("variED.analysisThreads", 2),
+            Long.getLong("variED.analysisDelay", 1000));
+    private ScheduledExecutorService executor;
+    private long delay;
+    private final IdentityHashMap<Object, Run> runs = new IdentityHashMap<>();
+    // guarded by runs
+    private final IdentityHashMap<Object, IncrementalAnalyzer> incrementalAnalyzers = new IdentityHashMap<>();
+
+    public static class Result {
+        private long version;
+        private boolean isValid;
+        private String[] coreFeatureIDs, deadFeatureIDs, falseOptionalFeatureIDs;
+
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean isValid() {
+            return isValid;
+        }
+
+        public String[] getCoreFeatureIDs() {
+            return coreFeatureIDs;
+        }
+
+        public String[] getDeadFeatureIDs() {
+            return deadFeatureIDs;
+        }
+
+        public String[] getFalseOptionalFeatureIDs() {
+            return falseOptionalFeatureIDs;
+        }
+    }
+
+    private static class Run {
+        ScheduledFuture<?> future;
+        volatile FeatureModelAnalyzer analyzer;
+        volatile boolean isCancelled = false;
+
+        void cancel() {
+            isCancelled = true;
+            future.cancel(false);
+            FeatureModelAnalyzer analyzer = this.analyzer;
+            if (analyzer != null)
+                analyzer.cancel(true);
+        }
+    }
+
+    AnalysisService(int threads, long delay) {
+        this.delay = delay;
+        this.executor = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "feature-model-analysis");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    public static AnalysisService getInstance() {
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("variED.analysis", "true"));
+    }
+
+    /**
+     * Schedules an analysis of a snapshot, cancelling any outdated analysis for the same key (e.g., a session).
+     * The callback is called on an analysis thread, and not at all if the analysis is cancelled or fails.
+     */
+    public void schedule(Object key, Kernel.Snapshot snapshot, Consumer<Result> callback) {
+        Run run = new Run();
+        synchronized (runs) {
+            Run previousRun = runs.get(key);
+            if (previousRun != null)
+                previousRun.cancel();
+            runs.put(key, run);
+            IncrementalAnalyzer incrementalAnalyzer = IncrementalAnalyzer.isEnabled()
+                    ? incrementalAnalyzers.computeIfAbsent(key, _key -> new IncrementalAnalyzer())
+                    : null;
+            run.future = executor.schedule(() -> {
+                try {
+                    Result result = analyze(snapshot, run, incrementalAnalyzer);
+                    if (result != null && !run.isCancelled)
+                        callback.accept(result);
+                } catch (Throwable t) {
+                    if (!run.isCancelled)
+                        Logger.error(t, "could not analyze feature model");
+                } finally {
+                    synchronized (runs) {
+                        runs.remove(key, run);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels any analysis for a key and discards the solver it kept, if any.
+     */
+    public void cancel(Object key) {
+        synchronized (runs) {
+            incrementalAnalyzers.remove(key);
+            Run run = runs.remove(key);
+            if (run != null)
+                run.cancel();
+        }
+    }
+
+    private static String[] getFeatureIDs(List<IFeature> features) {
+        // features are named by their IDs when converted from the kernel
+        return features.stream().map(IFeature::getName).toArray(String[]::new);
+    }
+
+    private static Result analyze(Kernel.Snapshot snapshot, Run run, IncrementalAnalyzer incrementalAnalyzer) throws Exception {
+        APersistentMap combinedEffect = snapshot.getCombinedEffect();
+        // there is no feature model to analyze while in conflict
+        if (!combinedEffect.containsKey(Keywords.FEATURES) || run.isCancelled)
+            return null;
+        long startTime = System.currentTimeMillis();
+        IncrementalAnalyzer.Analysis incrementalAnalysis = null;
+        if (incrementalAnalyzer != null) {
+            incrementalAnalysis = incrementalAnalyzer.analyze(combinedEffect, () -> run.isCancelled);
+            if (incrementalAnalysis == null)
+                return null;
+        }
+        IFeatureModel featureModel = FeatureModelFormat.combinedEffectToFeatureModel(combinedEffect);
+        FeatureModelAnalyzer analyzer = new FeatureModelAnalyzer(featureModel);
+        run.analyzer = analyzer;
+
+        Result result = new Result();
+        result.version = snapshot.getVersion();
+        result.isValid = incrementalAnalysis != null ? !incrementalAnalysis.isVoid() : analyzer.isValid();
+        if (result.isValid && !run.isCancelled) {
+            result.coreFeatureIDs = getFeatureIDs(analyzer.getCoreFeatures());
+            result.deadFeatureIDs = incrementalAnalysis != null
+                    ? incrementalAnalysis.getDeadFeatureIDs().toArray(new String[0])
+                    : getFeatureIDs(analyzer.getDeadFeatures());
+            result.falseOptionalFeatureIDs = getFeatureIDs(analyzer.getFalseOptionalFeatures());
+        } else
+            result.coreFeatureIDs = result.deadFeatureIDs = result.falseOptionalFeatureIDs = new String[]{};
+        if (run.isCancelled)
+            return null;
+        Logger.debug("analyzed feature model version {} in {} ms", result.version, System.currentTimeMillis() - startTime);
+        return result;
+    }
+}
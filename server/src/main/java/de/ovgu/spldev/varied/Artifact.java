@@ -1,7 +1,10 @@
 package de.ovgu.spldev.varied;
 
+import clojure.lang.APersistentMap;
 import com.google.gson.annotations.Expose;
 import de.ovgu.featureide.fm.core.base.IFeatureModel;
+import de.ovgu.spldev.varied.kernel.FeatureModelFormat;
+import de.ovgu.spldev.varied.kernel.Kernel;
 import de.ovgu.spldev.varied.util.FeatureModelUtils;
 import de.ovgu.spldev.varied.util.StringUtils;
 
@@ -9,11 +12,15 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Paths;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 public abstract class Artifact {
+    private static AtomicLong nextInstanceID = new AtomicLong();
     private String name;
     private Project project;
+    // distinguishes artifacts that are registered under the same path at different times
+    private long instanceID = nextInstanceID.getAndIncrement();
 
     Artifact(Project project, String name) {
         Objects.requireNonNull(project, "no project given");
@@ -33,6 +40,10 @@ public abstract class Artifact {
         return project;
     }
 
+    long getInstanceID() {
+        return instanceID;
+    }
+
     public Path getPath() {
         return new Path(project.getName(), name);
     }
@@ -75,33 +86,53 @@ public abstract class Artifact {
     }
 
     public static class FeatureModel extends Artifact {
-        private Supplier<IFeatureModel> initialFeatureModelSupplier;
-        private CollaborativeSession collaborativeSession;
-
+        private Supplier<APersistentMap> initialFeatureModelSupplier;
+        private volatile CollaborativeSession.FeatureModel collaborativeSession;
+        // the file the initial feature model is loaded from, if any
+        private java.nio.file.Path sourcePath;
 
         FeatureModel(Project project, String name, String source) {
             this(project, name, source, name + ".xml");
         }
 
         FeatureModel(Project project, String name, String source, String fileName) {
-            this(project, name, () -> FeatureModelUtils.loadFeatureModel(source, fileName));
+            this(project, name, () -> FeatureModelStore.getInstance().get(source, fileName));
         }
 
         FeatureModel(Project project, String name, java.nio.file.Path path) {
-            this(project, name, () -> FeatureModelUtils.loadFeatureModel(path));
+            this(project, name, path, null);
+        }
+
+        // the file is hashed at most once, so later loads that hit the store do not read it again
+        FeatureModel(Project project, String name, java.nio.file.Path path, String key) {
+            this(project, name, new Supplier<APersistentMap>() {
+                private String storeKey = key;
+
+                public APersistentMap get() {
+                    if (storeKey == null)
+                        storeKey = FeatureModelStore.getKey(path);
+                    return FeatureModelStore.getInstance().get(path, storeKey);
+                }
+            });
+            this.sourcePath = path;
         }
 
         FeatureModel(Project project, String name, IFeatureModel initialFeatureModel) {
-            this(project, name, () -> initialFeatureModel);
+            this(project, name, () -> FeatureModelFormat.toKernel(initialFeatureModel));
         }
 
-        FeatureModel(Project project, String name, Supplier<IFeatureModel> initialFeatureModelSupplier) {
+        FeatureModel(Project project, String name, Supplier<APersistentMap> initialFeatureModelSupplier) {
             super(project, name);
             this.initialFeatureModelSupplier = initialFeatureModelSupplier;
         }
 
-        public IFeatureModel getInitialFeatureModel() {
-            return initialFeatureModelSupplier.get();
+        java.nio.file.Path getSourcePath() {
+            return sourcePath;
+        }
+
+        // returns null instead of creating a collaborative session
+        CollaborativeSession.FeatureModel getExistingCollaborativeSession() {
+            return collaborativeSession;
         }
 
         public CollaborativeSession getCollaborativeSession() {
@@ -109,5 +140,46 @@ public abstract class Artifact {
                 this.collaborativeSession = new CollaborativeSession.FeatureModel(getPath(), initialFeatureModelSupplier.get());
             return collaborativeSession;
         }
+
+        /**
+         * Returns the artifact's current feature model without creating a collaborative session.
+         * May be called without holding the kernel lock.
+         */
+        APersistentMap getCurrentFeatureModel() {
+            CollaborativeSession.FeatureModel collaborativeSession = this.collaborativeSession;
+            return collaborativeSession == null
+                    ? initialFeatureModelSupplier.get()
+                    : collaborativeSession.getSnapshot().getCombinedEffect();
+        }
+
+        /**
+         * Returns the snapshot of the artifact's collaborative session, or null if it has none yet.
+         * In that case, the current feature model is the initial feature model.
+         */
+        Kernel.Snapshot getSnapshot() {
+            CollaborativeSession.FeatureModel collaborativeSession = this.collaborativeSession;
+            return collaborativeSession == null ? null : collaborativeSession.getSnapshot();
+        }
+
+        String export(Kernel.Snapshot snapshot, String formatName) {
+            return snapshot == null
+                    ? FeatureModelUtils.exportFeatureModel(initialFeatureModelSupplier.get(), formatName)
+                    : collaborativeSession.export(snapshot, formatName);
+        }
+
+        /**
+         * Creates a new artifact that starts from this artifact's current feature model.
+         * The fork's kernel is initialized with the session's combined effect, sharing all its
+         * persistent structures, so forking does not depend on the feature model's size.
+         */
+        FeatureModel fork(Project project, String name) {
+            if (this.collaborativeSession == null) {
+                FeatureModel fork = new FeatureModel(project, name, initialFeatureModelSupplier);
+                fork.sourcePath = sourcePath;
+                return fork;
+            }
+            APersistentMap combinedEffect = collaborativeSession.getCombinedEffect();
+            return new FeatureModel(project, name, () -> combinedEffect);
+        }
     }
 }
@@ -0,0 +1,139 @@
+package de.ovgu.spldev.varied;
+
+import java.util.*;
+
+/**
+ * Versioned index of all artifacts that are registered with the project manager.
+ * Every addition or removal increments the catalog version and is recorded in a bounded change log,
+ * so that sites which already know some version only have to be sent the changes since then.
+ */
+class ArtifactCatalog {
+    private static final int MAXIMUM_CHANGES = 10000;
+
+    private static class Change {
+        long version;
+        Artifact.Path artifactPath;
+        boolean isAddition;
+
+        Change(long version, Artifact.Path artifactPath, boolean isAddition) {
+            this.version = version;
+            this.artifactPath = artifactPath;
+            this.isAddition = isAddition;
+        }
+    }
+
+    static class Changes {
+        long version;
+        List<Artifact.Path> addedArtifactPaths = new ArrayList<>();
+        List<Artifact.Path> removedArtifactPaths = new ArrayList<>();
+
+        Changes(long version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * The paths of all artifacts at some catalog version. Pages of a listing are sliced from the
+     * same snapshot, so listing all artifacts does not walk the catalog once per page.
+     */
+    static class Listing {
+        final long version;
+        final List<Artifact.Path> artifactPaths;
+
+        Listing(long version, List<Artifact.Path> artifactPaths) {
+            this.version = version;
+            this.artifactPaths = Collections.unmodifiableList(artifactPaths);
+        }
+
+        List<Artifact.Path> getArtifactPaths(int offset, int limit) {
+            int end = limit > Integer.MAX_VALUE - offset ? Integer.MAX_VALUE : offset + limit;
+            return offset >= artifactPaths.size()
+                    ? new ArrayList<>()
+                    : new ArrayList<>(artifactPaths.subList(offset, Math.min(end, artifactPaths.size())));
+        }
+    }
+
+    private long version = 0;
+    // versions up to this one are no longer covered by the change log
+    private long oldestVersion = 0;
+    private LinkedHashMap<String, Artifact> artifacts = new LinkedHashMap<>();
+    private ArrayDeque<Change> changes = new ArrayDeque<>();
+    // rebuilt on the first listing after the catalog has changed
+    private Listing listing;
+
+    private static String getKey(Artifact.Path artifactPath) {
+        return artifactPath.toString().toLowerCase();
+    }
+
+    private void recordChange(Artifact.Path artifactPath, boolean isAddition) {
+        changes.addLast(new Change(++version, artifactPath, isAddition));
+        if (changes.size() > MAXIMUM_CHANGES)
+            oldestVersion = changes.removeFirst().version;
+    }
+
+    synchronized void add(Artifact artifact) {
+        artifacts.put(getKey(artifact.getPath()), artifact);
+        recordChange(artifact.getPath(), true);
+        FeatureSearchIndex.getInstance().add(artifact);
+    }
+
+    synchronized void remove(Artifact artifact) {
+        if (artifacts.remove(getKey(artifact.getPath())) != null) {
+            recordChange(artifact.getPath(), false);
+            FeatureSearchIndex.getInstance().remove(artifact);
+        }
+    }
+
+    synchronized void clear() {
+        artifacts.clear();
+        changes.clear();
+        FeatureSearchIndex.getInstance().clear();
+        // the version is never reset, so sites can not confuse old versions with new ones
+        oldestVersion = ++version;
+    }
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    synchronized int size() {
+        return artifacts.size();
+    }
+
+    synchronized Collection<Artifact> getArtifacts() {
+        return new ArrayList<>(artifacts.values());
+    }
+
+    synchronized Listing getListing() {
+        if (listing == null || listing.version != version) {
+            List<Artifact.Path> artifactPaths = new ArrayList<>(artifacts.size());
+            for (Artifact artifact : artifacts.values())
+                artifactPaths.add(artifact.getPath());
+            listing = new Listing(version, artifactPaths);
+        }
+        return listing;
+    }
+
+    /**
+     * Returns the net changes since a given version, or null if the change log does not reach back
+     * that far (in that case, a full listing is required).
+     */
+    synchronized Changes getChangesSince(long sinceVersion) {
+        if (sinceVersion < oldestVersion || sinceVersion > version)
+            return null;
+        LinkedHashMap<String, Change> netChanges = new LinkedHashMap<>();
+        Iterator<Change> iterator = changes.descendingIterator();
+        while (iterator.hasNext()) {
+            Change change = iterator.next();
+            if (change.version <= sinceVersion)
+                break;
+            netChanges.putIfAbsent(getKey(change.artifactPath), change);
+        }
+        Changes result = new Changes(version);
+        for (Change change : netChanges.values())
+            (change.isAddition ? result.addedArtifactPaths : result.removedArtifactPaths).add(change.artifactPath);
+        Collections.reverse(result.addedArtifactPaths);
+        Collections.reverse(result.removedArtifactPaths);
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package de.ovgu.spldev.varied;
+
+import de.ovgu.spldev.varied.kernel.Kernel;
+import de.ovgu.spldev.varied.kernel.Keywords;
+import de.ovgu.spldev.varied.util.FeatureModelUtils;
+import de.ovgu.spldev.varied.util.StringUtils;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Read-only access to an artifact's current export, e.g., GET /artifact?project=P&artifact=A&format=XmlFeatureModelFormat.
+ * The ETag is derived from the kernel version, so polling clients that send If-None-Match are answered with
+ * 304 Not Modified, without exporting anything, until the feature model changes. Neither does this create
+ * a collaborative session nor a kernel site, and it does not take the kernel lock.
+ */
+@WebServlet("/artifact")
+public class ArtifactServlet extends HttpServlet {
+    // instance IDs and versions restart with the server, so ETags from earlier processes must not match
+    private static final String EPOCH = UUID.randomUUID().toString();
+
+    private static String getETag(Artifact artifact, Kernel.Snapshot snapshot, String formatName) {
+        // without a session, the feature model is the initial one, which is also version 0 of a new session
+        return "\"" + EPOCH + "-" + artifact.getInstanceID() + "-" + (snapshot == null ? 0 : snapshot.getVersion()) + "-" +
+                formatName.replaceAll("[^A-Za-z0-9]", "_") + "\"";
+    }
+
+    private static boolean isMatch(String ifNoneMatch, String eTag) {
+        return ifNoneMatch != null && (ifNoneMatch.trim().equals("*") ||
+                Arrays.stream(ifNoneMatch.split(",")).map(String::trim).anyMatch(eTag::equals));
+    }
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String projectName = request.getParameter("project"), artifactName = request.getParameter("artifact"),
+                formatName = request.getParameter("format") != null ? request.getParameter("format") : FeatureModelUtils.XML_FORMAT;
+        Artifact artifact = StringUtils.isPresent(projectName) && StringUtils.isPresent(artifactName)
+                ? ProjectManager.getInstance().getArtifact(new Artifact.Path(projectName, artifactName))
+                : null;
+        if (!(artifact instanceof Artifact.FeatureModel)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "artifact not found");
+            return;
+        }
+
+        Artifact.FeatureModel featureModel = (Artifact.FeatureModel) artifact;
+        Kernel.Snapshot snapshot = featureModel.getSnapshot();
+        if (snapshot != null && !snapshot.getCombinedEffect().containsKey(Keywords.FEATURES)) {
+            response.sendError(HttpServletResponse.SC_CONFLICT, "feature model not available while in conflict");
+            return;
+        }
+        String eTag = getETag(artifact, snapshot, formatName);
+        response.setHeader("ETag", eTag);
+        // clients may cache the export, but have to revalidate it
+        response.setHeader("Cache-Control", "no-cache");
+        if (isMatch(request.getHeader("If-None-Match"), eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        String export;
+        try {
+            export = featureModel.export(snapshot, formatName);
+        } catch (RuntimeException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        response.setContentType(FeatureModelUtils.XML_FORMAT.equals(formatName) ? "application/xml" : "text/plain");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(export);
+    }
+}
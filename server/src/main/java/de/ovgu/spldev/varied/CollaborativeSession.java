@@ -1,17 +1,21 @@
 package de.ovgu.spldev.varied;
 
+import clojure.lang.APersistentMap;
 import de.ovgu.featureide.fm.core.base.IFeatureModel;
 import de.ovgu.featureide.fm.core.base.IFeatureModelFactory;
 import de.ovgu.featureide.fm.core.base.impl.DefaultFeatureModelFactory;
 import de.ovgu.featureide.fm.core.base.impl.FeatureModel;
 import de.ovgu.spldev.varied.kernel.Kernel;
+import de.ovgu.spldev.varied.kernel.Keywords;
 import de.ovgu.spldev.varied.messaging.Api;
 import de.ovgu.spldev.varied.messaging.Message;
 import de.ovgu.spldev.varied.util.CollaboratorUtils;
-import de.ovgu.spldev.varied.util.FeatureModelUtils;
 import org.pmw.tinylog.Logger;
 
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -21,6 +25,9 @@ import java.util.stream.Stream;
 public abstract class CollaborativeSession {
     protected Artifact.Path artifactPath;
     protected Set<Collaborator> collaborators = new HashSet<>();
+    // spectators only watch, so they are neither kernel sites nor announced to collaborators
+    protected Set<Collaborator> spectators = new HashSet<>();
+    protected SessionRecorder sessionRecorder;
 
     CollaborativeSession(Artifact.Path artifactPath) {
         this.artifactPath = artifactPath;
@@ -34,51 +41,139 @@ public abstract class CollaborativeSession {
 
     protected abstract void _leave(Collaborator oldCollaborator);
 
+    protected abstract void _spectate(Collaborator newSpectator);
+
     protected abstract boolean _onMessage(Collaborator collaborator, Message.IDecodable message);
 
     public boolean isInProcess() {
-        return collaborators.size() > 0;
+        return collaborators.size() > 0 || spectators.size() > 0;
+    }
+
+    boolean isSpectator(Collaborator collaborator) {
+        return spectators.contains(collaborator);
     }
 
     public void join(Collaborator newCollaborator) {
-        Logger.info("{} joins collaborative session {}", newCollaborator, this);
+        MessageLog.info("{} joins collaborative session {}", newCollaborator, this);
+        if (sessionRecorder != null)
+            sessionRecorder.recordJoin(newCollaborator.getSiteID(), false);
+        // spectators may start editing by joining
+        spectators.remove(newCollaborator);
         // collaborator may re-join to obtain new initialization context,
         // therefore do not check "add" return value here
         collaborators.add(newCollaborator);
         _join(newCollaborator);
         CollaboratorUtils.broadcastToOtherCollaborators(collaborators, new Api.CollaboratorJoined(artifactPath, newCollaborator), newCollaborator);
+        CollaboratorUtils.broadcast(spectators, new Api.CollaboratorJoined(artifactPath, newCollaborator));
         CollaboratorUtils.sendForEveryCollaborator(newCollaborator, collaborators, collaborator -> new Api.CollaboratorJoined(artifactPath, collaborator));
     }
 
+    /**
+     * Spectators receive the session's broadcasts and snapshots of the artifact, but can not edit it.
+     * As they do not become kernel sites, they do not slow down the kernel for collaborators.
+     */
+    public void spectate(Collaborator newSpectator) {
+        MessageLog.info("{} spectates collaborative session {}", newSpectator, this);
+        if (collaborators.contains(newSpectator))
+            throw new RuntimeException("already joined collaborative session, leave before spectating");
+        if (sessionRecorder != null)
+            sessionRecorder.recordJoin(newSpectator.getSiteID(), true);
+        spectators.add(newSpectator);
+        _spectate(newSpectator);
+        CollaboratorUtils.sendForEveryCollaborator(newSpectator, collaborators, collaborator -> new Api.CollaboratorJoined(artifactPath, collaborator));
+    }
+
     public void leave(Collaborator oldCollaborator) {
-        Logger.info("{} leaves collaborative session {}", oldCollaborator, this);
+        MessageLog.info("{} leaves collaborative session {}", oldCollaborator, this);
+        if (sessionRecorder != null)
+            sessionRecorder.recordLeave(oldCollaborator.getSiteID());
+        if (spectators.remove(oldCollaborator)) {
+            stopRecording();
+            return;
+        }
         if (!collaborators.remove(oldCollaborator))
             throw new RuntimeException("collaborator already left");
         _leave(oldCollaborator);
         CollaboratorUtils.broadcastToOtherCollaborators(collaborators, new Api.CollaboratorLeft(artifactPath, oldCollaborator), oldCollaborator);
+        CollaboratorUtils.broadcast(spectators, new Api.CollaboratorLeft(artifactPath, oldCollaborator));
+        stopRecording();
+    }
+
+    private void stopRecording() {
+        if (sessionRecorder != null && !isInProcess())
+            sessionRecorder.stop();
     }
 
     void onMessage(Collaborator collaborator, Message message) throws Message.InvalidMessageException {
+        if (isSpectator(collaborator) && !message.isType(Api.TypeEnum.EXPORT_ARTIFACT) &&
+                !message.isType(Api.TypeEnum.LIST_VERSIONS) && !message.isType(Api.TypeEnum.FETCH_VERSION) &&
+                !message.isType(Api.TypeEnum.DIFF_VERSIONS))
+            throw new Message.InvalidMessageException("spectators can not edit the collaborative session");
+        if (sessionRecorder != null)
+            sessionRecorder.recordMessage(collaborator.getSiteID(), message);
         if (!_onMessage(collaborator, (Message.IDecodable) message))
             throw new Message.InvalidMessageException("message can not be processed");
     }
 
     static class FeatureModel extends CollaborativeSession {
+        private static final long SPECTATOR_SNAPSHOT_INTERVAL = Long.getLong("variED.spectatorSnapshotInterval", 500);
+        private static ScheduledExecutorService snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "spectator-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+
         private Kernel kernel;
         private String votingStrategy = "consensus";
         private boolean onlyInvolved = false;
         private VotingPhase votingPhase;
+        private ExportCache exportCache = new ExportCache();
+        private long spectatorVersion = -1, spectatorSnapshotTime;
+        private boolean isSpectatorSnapshotScheduled = false;
+        private long encodedSnapshotVersion = -1;
+        private String encodedSnapshot;
+        private long analysisVersion = -1;
+        private AnalysisService.Result analysisResult;
+        private VersionHistory versionHistory = new VersionHistory();
 
-        FeatureModel(Artifact.Path artifactPath, IFeatureModel initialFeatureModel) {
+        FeatureModel(Artifact.Path artifactPath, APersistentMap initialFeatureModel) {
             super(artifactPath);
             Objects.requireNonNull(initialFeatureModel, "no initial feature model given");
             this.kernel = new Kernel(artifactPath, initialFeatureModel);
+            versionHistory.record(kernel.getSnapshot());
+            if (FeatureSearchIndex.isEnabled())
+                FeatureSearchIndex.getInstance().update(artifactPath, kernel.getCombinedEffect());
+            if (SessionRecorder.isEnabled())
+                sessionRecorder = new SessionRecorder(artifactPath, kernel::getSnapshot);
         }
 
         public IFeatureModel toFeatureModel() {
             return kernel.toFeatureModel();
         }
 
+        APersistentMap getCombinedEffect() {
+            APersistentMap combinedEffect = kernel.getCombinedEffect();
+            if (!combinedEffect.containsKey(Keywords.FEATURES))
+                throw new RuntimeException("feature model not available while in conflict");
+            return combinedEffect;
+        }
+
+        Kernel getKernel() {
+            return kernel;
+        }
+
+        Kernel.Snapshot getSnapshot() {
+            return kernel.getSnapshot();
+        }
+
+        public String export(String formatName) {
+            return export(kernel.getSnapshot(), formatName);
+        }
+
+        String export(Kernel.Snapshot snapshot, String formatName) {
+            return exportCache.get(snapshot, formatName);
+        }
+
         private void broadcastResponse(Collaborator collaborator, Object[] involvedSiteIDsAndMessage) {
             String[] involvedSiteIDs = (String[]) involvedSiteIDsAndMessage[0];
             String newMessage = (String) involvedSiteIDsAndMessage[1];
@@ -97,10 +192,75 @@ public abstract class CollaborativeSession {
                 broadcastVoters();
                 updateVotingPhase();
             }
+            onUpdate();
+        }
+
+        private void onUpdate() {
+            versionHistory.record(kernel.getSnapshot());
+            broadcastSnapshot();
+            scheduleAnalysis();
+            if (FeatureSearchIndex.isEnabled())
+                FeatureSearchIndex.getInstance().update(artifactPath, kernel.getCombinedEffect());
+        }
+
+        private Api.Snapshot createSnapshot() {
+            Kernel.Snapshot snapshot = kernel.getSnapshot();
+            // encoded once per version, regardless of the number of spectators
+            if (encodedSnapshotVersion != snapshot.getVersion()) {
+                encodedSnapshot = Kernel.encode(snapshot);
+                encodedSnapshotVersion = snapshot.getVersion();
+            }
+            return new Api.Snapshot(artifactPath, snapshot.getVersion(), encodedSnapshot);
+        }
+
+        // spectators receive at most one snapshot per interval, so bursts of operations are coalesced
+        private void broadcastSnapshot() {
+            if (spectators.isEmpty() || kernel.getVersion() == spectatorVersion || isSpectatorSnapshotScheduled)
+                return;
+            long delay = spectatorSnapshotTime + SPECTATOR_SNAPSHOT_INTERVAL - System.currentTimeMillis();
+            if (delay > 0) {
+                isSpectatorSnapshotScheduled = true;
+                snapshotExecutor.schedule(() -> {
+                    synchronized (WebSocket.lock) {
+                        isSpectatorSnapshotScheduled = false;
+                        broadcastSnapshot();
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+            spectatorVersion = kernel.getVersion();
+            spectatorSnapshotTime = System.currentTimeMillis();
+            CollaboratorUtils.broadcast(spectators, createSnapshot());
+        }
+
+        private void scheduleAnalysis() {
+            if (!AnalysisService.isEnabled() || !isInProcess() || kernel.getVersion() == analysisVersion)
+                return;
+            analysisVersion = kernel.getVersion();
+            AnalysisService.getInstance().schedule(this, kernel.getSnapshot(), result -> {
+                synchronized (WebSocket.lock) {
+                    // drop results for versions that have been superseded in the meantime
+                    if (result.getVersion() != kernel.getVersion())
+                        return;
+                    analysisResult = result;
+                    Api.Analysis analysisMessage = new Api.Analysis(artifactPath, result);
+                    CollaboratorUtils.broadcast(collaborators, analysisMessage);
+                    CollaboratorUtils.broadcast(spectators, analysisMessage);
+                }
+            });
+        }
+
+        private void sendAnalysis(Collaborator collaborator) {
+            if (analysisResult != null && analysisResult.getVersion() == kernel.getVersion())
+                collaborator.send(new Api.Analysis(artifactPath, analysisResult));
+            else
+                scheduleAnalysis();
         }
 
         void broadcastVoters() {
-            CollaboratorUtils.broadcast(collaborators, new Api.Voters(artifactPath, votingPhase.getVoters()));
+            Api.Voters votersMessage = new Api.Voters(artifactPath, votingPhase.getVoters());
+            CollaboratorUtils.broadcast(collaborators, votersMessage);
+            CollaboratorUtils.broadcast(spectators, votersMessage);
         }
 
         void updateVotingPhase() {
@@ -108,7 +268,10 @@ public abstract class CollaborativeSession {
             if (electedVersionID != null) {
                 votingPhase = null;
                 kernel.resolveConflict(electedVersionID);
-                CollaboratorUtils.broadcast(collaborators, new Api.ResolutionOutcome(artifactPath, electedVersionID));
+                Api.ResolutionOutcome resolutionOutcomeMessage = new Api.ResolutionOutcome(artifactPath, electedVersionID);
+                CollaboratorUtils.broadcast(collaborators, resolutionOutcomeMessage);
+                CollaboratorUtils.broadcast(spectators, resolutionOutcomeMessage);
+                onUpdate();
             }
         }
 
@@ -138,6 +301,7 @@ public abstract class CollaborativeSession {
                 Api.Vote voteMessage = (Api.Vote) message;
                 voteMessage.siteID = collaborator.getSiteID();
                 CollaboratorUtils.broadcast(collaborators, voteMessage);
+                CollaboratorUtils.broadcast(spectators, voteMessage);
                 votingPhase.vote(collaborator, voteMessage.versionID);
                 updateVotingPhase();
                 return true;
@@ -145,11 +309,35 @@ public abstract class CollaborativeSession {
 
             if (message instanceof Api.ExportArtifact) {
                 Api.ExportArtifact exportArtifactMessage = (Api.ExportArtifact) message;
-                exportArtifactMessage.data = FeatureModelUtils.serializeFeatureModel(toFeatureModel(), exportArtifactMessage.format);
+                if (exportArtifactMessage.version != null || exportArtifactMessage.timestamp != null) {
+                    versionHistory.export(collaborator, exportArtifactMessage);
+                    return true;
+                }
+                exportArtifactMessage.data = export(exportArtifactMessage.format);
                 collaborator.send(exportArtifactMessage);
                 return true;
             }
 
+            if (message instanceof Api.ListVersions) {
+                Api.ListVersions listVersionsMessage = (Api.ListVersions) message;
+                listVersionsMessage.versions = versionHistory.getCheckpoints();
+                collaborator.send(listVersionsMessage);
+                return true;
+            }
+
+            if (message instanceof Api.DiffVersions) {
+                Api.DiffVersions diffVersionsMessage = (Api.DiffVersions) message;
+                diffVersionsMessage.diff = versionHistory.diff(kernel.getSnapshot(),
+                        diffVersionsMessage.fromVersion, diffVersionsMessage.toVersion);
+                collaborator.send(diffVersionsMessage);
+                return true;
+            }
+
+            if (message instanceof Api.FetchVersion) {
+                versionHistory.fetch(collaborator, artifactPath, (Api.FetchVersion) message);
+                return true;
+            }
+
             return false;
         }
 
@@ -167,6 +355,17 @@ public abstract class CollaborativeSession {
                     newCollaborator.send(new Api.Vote(artifactPath, entry.getKey(), entry.getValue()));
                 updateVotingPhase();
             }
+            sendAnalysis(newCollaborator);
+        }
+
+        protected void _spectate(Collaborator newSpectator) {
+            newSpectator.send(createSnapshot());
+            if (votingPhase != null) {
+                newSpectator.send(new Api.Voters(artifactPath, votingPhase.getVoters()));
+                for (Map.Entry<Collaborator, String> entry : votingPhase.getVoteResults().entrySet())
+                    newSpectator.send(new Api.Vote(artifactPath, entry.getKey(), entry.getValue()));
+            }
+            sendAnalysis(newSpectator);
         }
 
         protected void _leave(Collaborator oldCollaborator) {
@@ -176,6 +375,10 @@ public abstract class CollaborativeSession {
                 updateVotingPhase();
             }
             broadcastResponse(oldCollaborator, kernel.siteLeft(oldCollaborator.getSiteID()));
+            if (!isInProcess()) {
+                AnalysisService.getInstance().cancel(this);
+                analysisVersion = -1;
+            }
         }
     }
 }
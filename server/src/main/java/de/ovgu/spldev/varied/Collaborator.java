@@ -23,6 +23,8 @@ public class Collaborator {
     private WebSocket webSocket;
     private Queue<Message.IEncodable> outgoingQueue = new LinkedList<>();
 
+    private static int ARTIFACT_PATHS_PAGE_SIZE = 500;
+    private static int SEARCH_MATCHES_PAGE_SIZE = 50;
     private static Haikunator haikunator = new HaikunatorBuilder().setDelimiter(" ").setTokenLength(0).build();
     private Set<CollaborativeSession> collaborativeSessions = new HashSet<>();
 
@@ -34,15 +36,18 @@ public class Collaborator {
         this(UUID.randomUUID(), generateName(), webSocket);
     }
 
-    private Collaborator(UUID siteID, String name, WebSocket webSocket) {
+    Collaborator(UUID siteID, String name, WebSocket webSocket) {
         this.siteID = siteID;
         this.name = name;
         this.webSocket = webSocket;
     }
 
     private void _send(Message.IEncodable message) throws WebSocket.SendException {
-        Logger.info("sending {} message to collaborator {}", ((Message) message).getType(), this);
+        MessageLog.info("sending {} message to collaborator {}", ((Message) message).getType(), this);
+        long startTime = System.nanoTime();
         webSocket.send(message);
+        Metrics.getInstance().recordSentMessage(((Message) message).getTypeEnum());
+        Trace.span("send", startTime, ((Message) message).getTypeEnum(), "to", this);
     }
 
     void sendPending() {
@@ -62,10 +67,38 @@ public class Collaborator {
         sendPending();
     }
 
-    void sendInitialInformation() {
+    private boolean sendArtifactChanges(long sinceVersion) {
+        ArtifactCatalog.Changes changes = ProjectManager.getInstance().getArtifactCatalog().getChangesSince(sinceVersion);
+        if (changes == null)
+            return false;
+        send(new Api.AddArtifact(changes.addedArtifactPaths, changes.version));
+        for (Artifact.Path artifactPath : changes.removedArtifactPaths)
+            send(new Api.RemoveArtifact(artifactPath, changes.version));
+        return true;
+    }
+
+    private Integer sendArtifactPaths(ArtifactCatalog.Listing listing, int offset, int limit) {
+        List<Artifact.Path> artifactPaths = listing.getArtifactPaths(offset, limit);
+        Integer nextOffset = offset + artifactPaths.size() < listing.artifactPaths.size() ? offset + artifactPaths.size() : null;
+        send(new Api.AddArtifact(artifactPaths, listing.version, nextOffset));
+        return nextOffset;
+    }
+
+    void sendInitialInformation(Long catalogVersion) {
         Logger.info("sending initial information to collaborator {}", this);
         send(new Api.CollaboratorJoined(null, this));
-        send(new Api.AddArtifact(ProjectManager.getInstance().getArtifactPaths()));
+        // a site that already knows some version of the catalog is only sent the changes since then
+        if (catalogVersion != null && sendArtifactChanges(catalogVersion))
+            return;
+        ArtifactCatalog.Listing listing = ProjectManager.getInstance().getArtifactCatalog().getListing();
+        Integer offset = 0;
+        do
+            offset = sendArtifactPaths(listing, offset, ARTIFACT_PATHS_PAGE_SIZE);
+        while (offset != null);
+    }
+
+    int getOutgoingQueueLength() {
+        return outgoingQueue.size();
     }
 
     public String getName() {
@@ -91,7 +124,7 @@ public class Collaborator {
 
     void onMessage(Message message) throws Message.InvalidMessageException {
         Objects.requireNonNull(message, "no message given");
-        Logger.info("received {} message from collaborator {}", message.getType(), this);
+        MessageLog.info("received {} message from collaborator {}", message.getType(), this);
 
         if (message.isType(Api.TypeEnum.RESET)) {
             Logger.info("resetting server");
@@ -106,21 +139,35 @@ public class Collaborator {
             return;
         }
 
+        if (message.isType(Api.TypeEnum.LIST_ARTIFACTS)) {
+            Api.ListArtifacts listArtifactsMessage = (Api.ListArtifacts) message;
+            if (listArtifactsMessage.sinceVersion == null || !sendArtifactChanges(listArtifactsMessage.sinceVersion))
+                sendArtifactPaths(ProjectManager.getInstance().getArtifactCatalog().getListing(),
+                        Math.max(0, listArtifactsMessage.offset),
+                        listArtifactsMessage.limit == null
+                                ? ARTIFACT_PATHS_PAGE_SIZE
+                                : Math.max(1, Math.min(listArtifactsMessage.limit, ARTIFACT_PATHS_PAGE_SIZE)));
+            return;
+        }
+
+        if (message.isType(Api.TypeEnum.SEARCH_FEATURES)) {
+            Api.SearchFeatures searchFeaturesMessage = (Api.SearchFeatures) message;
+            if (!FeatureSearchIndex.isEnabled())
+                throw new RuntimeException("feature search is disabled");
+            searchFeaturesMessage.matches = FeatureSearchIndex.getInstance().search(searchFeaturesMessage.query,
+                    searchFeaturesMessage.fuzzy,
+                    searchFeaturesMessage.limit == null ? SEARCH_MATCHES_PAGE_SIZE : searchFeaturesMessage.limit);
+            send(searchFeaturesMessage);
+            return;
+        }
+
         Artifact.Path artifactPath = message.getArtifactPath();
         if (artifactPath == null)
             throw new Message.InvalidMessageException("no artifact path given");
 
         if (message.isType(Api.TypeEnum.ADD_ARTIFACT)) {
             Logger.info("adding new artifact {}", artifactPath);
-            if (ProjectManager.getInstance().getArtifact(artifactPath) != null)
-                throw new RuntimeException("artifact for path " + artifactPath + " already exists");
-            Project project = ProjectManager.getInstance().getProject(artifactPath);
-            if (project == null) {
-                String projectName = artifactPath.getProjectName();
-                Logger.info("adding new project {}", projectName);
-                project = new Project(projectName);
-                ProjectManager.getInstance().addProject(project);
-            }
+            Project project = ProjectManager.getInstance().getProjectForNewArtifact(artifactPath);
             String source = ((Api.AddArtifact) message).source;
             Artifact artifact;
             if (source == null)
@@ -129,7 +176,23 @@ public class Collaborator {
             else
                 artifact = new Artifact.FeatureModel(project, artifactPath.getArtifactName(), source);
             project.addArtifact(artifact);
-            CollaboratorManager.getInstance().broadcast(new Api.AddArtifact(Arrays.asList(artifactPath)));
+            CollaboratorManager.getInstance().broadcast(new Api.AddArtifact(Arrays.asList(artifactPath),
+                    ProjectManager.getInstance().getArtifactCatalog().getVersion()));
+            return;
+        }
+
+        if (message.isType(Api.TypeEnum.FORK_ARTIFACT)) {
+            Artifact.Path forkArtifactPath = ((Api.ForkArtifact) message).forkArtifactPath;
+            if (forkArtifactPath == null)
+                throw new Message.InvalidMessageException("no fork artifact path given");
+            Logger.info("forking artifact {} to {}", artifactPath, forkArtifactPath);
+            Artifact artifact = ProjectManager.getInstance().getArtifact(artifactPath);
+            if (artifact == null)
+                throw new RuntimeException("no artifact found for path " + artifactPath);
+            Project project = ProjectManager.getInstance().getProjectForNewArtifact(forkArtifactPath);
+            project.forkArtifact(artifact, forkArtifactPath.getArtifactName());
+            CollaboratorManager.getInstance().broadcast(new Api.AddArtifact(Arrays.asList(forkArtifactPath),
+                    ProjectManager.getInstance().getArtifactCatalog().getVersion()));
             return;
         }
 
@@ -141,7 +204,8 @@ public class Collaborator {
             if (artifact.getCollaborativeSession().isInProcess())
                 throw new RuntimeException("collaborative session for artifact is still in process");
             ProjectManager.getInstance().getProject(artifactPath).removeArtifact(artifact);
-            CollaboratorManager.getInstance().broadcast(new Api.RemoveArtifact(artifactPath));
+            CollaboratorManager.getInstance().broadcast(new Api.RemoveArtifact(artifactPath,
+                    ProjectManager.getInstance().getArtifactCatalog().getVersion()));
             return;
         }
 
@@ -152,7 +216,9 @@ public class Collaborator {
         Logger.debug("message concerns collaborative session {}", collaborativeSession);
 
         if (message.isType(Api.TypeEnum.JOIN_REQUEST) || message.isType(Api.TypeEnum.LEAVE_REQUEST)) {
-            if (message.isType(Api.TypeEnum.JOIN_REQUEST))
+            if (message.isType(Api.TypeEnum.JOIN_REQUEST) && ((Api.JoinRequest) message).spectator)
+                spectateCollaborativeSession(collaborativeSession);
+            else if (message.isType(Api.TypeEnum.JOIN_REQUEST))
                 joinCollaborativeSession(collaborativeSession);
             if (message.isType(Api.TypeEnum.LEAVE_REQUEST))
                 leaveCollaborativeSession(collaborativeSession);
@@ -173,6 +239,11 @@ public class Collaborator {
         collaborativeSessions.add(collaborativeSession);
     }
 
+    private void spectateCollaborativeSession(CollaborativeSession collaborativeSession) {
+        collaborativeSession.spectate(this);
+        collaborativeSessions.add(collaborativeSession);
+    }
+
     private void leaveCollaborativeSession(CollaborativeSession collaborativeSession) {
         collaborativeSession.leave(this);
         collaborativeSessions.remove(collaborativeSession);
@@ -187,7 +258,8 @@ public class Collaborator {
     private void broadcastUpdatedProfile() {
         send(new Api.CollaboratorJoined(null, this));
         for (CollaborativeSession collaborativeSession : collaborativeSessions)
-            CollaboratorUtils.broadcastToOtherCollaborators(collaborativeSession.collaborators,
-                    new Api.CollaboratorJoined(collaborativeSession.artifactPath, this), this);
+            if (!collaborativeSession.isSpectator(this))
+                CollaboratorUtils.broadcastToOtherCollaborators(collaborativeSession.collaborators,
+                        new Api.CollaboratorJoined(collaborativeSession.artifactPath, this), this);
     }
 }
@@ -4,6 +4,7 @@ import de.ovgu.spldev.varied.messaging.Message;
 import de.ovgu.spldev.varied.util.CollaboratorUtils;
 import org.pmw.tinylog.Logger;
 
+import java.util.Collection;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -23,7 +24,7 @@ public class CollaboratorManager {
         collaborators.clear();
     }
 
-    public UUID register(WebSocket webSocket, UUID siteID) {
+    public UUID register(WebSocket webSocket, UUID siteID, Long catalogVersion) {
         Collaborator collaborator;
         if (siteID != null) {
             if (collaborators.containsKey(siteID)) {
@@ -36,7 +37,7 @@ public class CollaboratorManager {
             collaborator = new Collaborator(webSocket);
             collaborators.put(collaborator.getSiteID(), collaborator);
         }
-        collaborator.sendInitialInformation();
+        collaborator.sendInitialInformation(catalogVersion);
         Logger.info("registered site {}", collaborator.getSiteID());
         return collaborator.getSiteID();
     }
@@ -49,6 +50,10 @@ public class CollaboratorManager {
         }
     }
 
+    Collection<Collaborator> getCollaborators() {
+        return collaborators.values();
+    }
+
     public void broadcast(Message.IEncodable message) {
         CollaboratorUtils.broadcast(collaborators.values(), message);
     }
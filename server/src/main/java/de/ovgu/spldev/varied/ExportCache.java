@@ -0,0 +1,53 @@
+package de.ovgu.spldev.varied;
+
+import de.ovgu.spldev.varied.kernel.Kernel;
+import de.ovgu.spldev.varied.util.FeatureModelUtils;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Caches exports of a feature model per format for the current kernel version.
+ * When the kernel version changes, all exports are discarded. Concurrent requests for the
+ * same export wait for a single computation instead of exporting the feature model repeatedly.
+ */
+class ExportCache {
+    private long version = -1;
+    private HashMap<String, CompletableFuture<String>> exports = new HashMap<>();
+
+    String get(Kernel.Snapshot snapshot, String formatName) {
+        CompletableFuture<String> export, newExport = new CompletableFuture<>();
+        synchronized (this) {
+            // outdated snapshots are exported, but not cached
+            if (snapshot.getVersion() < version)
+                return FeatureModelUtils.exportFeatureModel(snapshot.getCombinedEffect(), formatName);
+            if (snapshot.getVersion() > version) {
+                version = snapshot.getVersion();
+                exports.clear();
+            }
+            export = exports.putIfAbsent(formatName, newExport);
+        }
+
+        if (export == null) {
+            try {
+                newExport.complete(FeatureModelUtils.exportFeatureModel(snapshot.getCombinedEffect(), formatName));
+            } catch (Throwable t) {
+                // do not cache failures, e.g. for invalid formats
+                synchronized (this) {
+                    exports.remove(formatName, newExport);
+                }
+                newExport.completeExceptionally(t);
+            }
+            export = newExport;
+        }
+
+        try {
+            return export.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package de.ovgu.spldev.varied;
+
+import clojure.lang.APersistentMap;
+import de.ovgu.spldev.varied.util.FeatureModelUtils;
+import de.ovgu.spldev.varied.util.HashUtils;
+import org.pmw.tinylog.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed store of immutable base feature models in the kernel's representation.
+ * Entries are addressed by the SHA-256 hash of a source and its format, so artifacts with identical
+ * sources (e.g., an example registered in several projects, or repeated uploads) are loaded only once.
+ * As the kernel never mutates its initial feature model, their sessions then share its persistent
+ * structures until they diverge. Entries are softly referenced and reloaded when reclaimed.
+ */
+public class FeatureModelStore {
+    private static final int BUFFER_SIZE = 65536;
+    private static FeatureModelStore instance;
+    private ConcurrentHashMap<String, SoftReference<APersistentMap>> featureModels = new ConcurrentHashMap<>();
+
+    private FeatureModelStore() {
+    }
+
+    public static FeatureModelStore getInstance() {
+        return instance == null ? instance = new FeatureModelStore() : instance;
+    }
+
+    private static String getExtension(String fileName) {
+        int index = fileName.lastIndexOf('.');
+        return index == -1 ? "" : fileName.substring(index + 1).toLowerCase();
+    }
+
+    private static String getKey(String source, String fileName) {
+        return getExtension(fileName) + ":" + HashUtils.sha256(source);
+    }
+
+    static String getKey(Path path, String hash) {
+        return getExtension(path.getFileName().toString()) + ":" + hash;
+    }
+
+    // hashes the file's bytes, which equals the hash of its UTF-8 source
+    static String getKey(Path path) {
+        MessageDigest digest = HashUtils.createDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            for (int length; (length = inputStream.read(buffer)) != -1; )
+                digest.update(buffer, 0, length);
+        } catch (IOException e) {
+            throw new RuntimeException("could not read feature model at " + path);
+        }
+        return getKey(path, HashUtils.toHexString(digest.digest()));
+    }
+
+    private APersistentMap get(String key, Supplier<APersistentMap> loader) {
+        SoftReference<APersistentMap> reference = featureModels.get(key);
+        APersistentMap featureModel = reference == null ? null : reference.get();
+        if (featureModel != null) {
+            Logger.debug("reusing stored feature model {}", key);
+            return featureModel;
+        }
+
+        featureModel = loader.get();
+        // concurrent loads of the same source may race, then the first stored feature model wins
+        SoftReference<APersistentMap> newReference = new SoftReference<>(featureModel);
+        reference = featureModels.merge(key, newReference,
+                (oldReference, _newReference) -> oldReference.get() == null ? _newReference : oldReference);
+        featureModels.values().removeIf(_reference -> _reference.get() == null);
+        APersistentMap storedFeatureModel = reference.get();
+        return storedFeatureModel != null ? storedFeatureModel : featureModel;
+    }
+
+    public APersistentMap get(String source, String fileName) {
+        return get(getKey(source, fileName), () -> FeatureModelUtils.loadKernelFeatureModel(source, fileName));
+    }
+
+    /**
+     * Loads a feature model from a file without reading it into memory as a whole.
+     */
+    public APersistentMap get(Path path) {
+        return get(path, getKey(path));
+    }
+
+    /**
+     * Loads a feature model from a file whose key is already known, so the file is not hashed again.
+     */
+    public APersistentMap get(Path path, String key) {
+        return get(key, () -> FeatureModelUtils.loadKernelFeatureModel(path));
+    }
+
+    int size() {
+        return featureModels.size();
+    }
+
+    void clear() {
+        featureModels.clear();
+    }
+}
@@ -0,0 +1,393 @@
+package de.ovgu.spldev.varied;
+
+import clojure.lang.APersistentMap;
+import clojure.lang.IMapEntry;
+import com.google.gson.annotations.Expose;
+import de.ovgu.spldev.varied.kernel.Keywords;
+import de.ovgu.spldev.varied.kernel.PersistentMapDiff;
+import org.pmw.tinylog.Logger;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over the names and descriptions of all features in all registered artifacts.
+ * Registering an artifact does not load its feature model. Artifacts are indexed when their collaborative
+ * session is created, and all others are indexed in the background once the first search arrives, so
+ * servers that are never searched do not load (or fetch) every artifact. Afterwards, the index is updated
+ * from the session's snapshots after every operation. As the kernel's feature maps are persistent, the
+ * changed features are found by diffing the tries against the previously indexed feature map, which costs
+ * time proportional to the change, not the model. The previous feature map is only weakly referenced,
+ * if it has been reclaimed, the artifact is indexed from scratch.
+ */
+public class FeatureSearchIndex {
+    private static final int MAXIMUM_MATCHES = 500;
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern CAMEL_CASE_SEPARATOR = Pattern.compile("(?<=\\p{Ll})(?=\\p{Lu})|(?<=\\p{Lu})(?=\\p{Lu}\\p{Ll})|(?<=\\p{L})(?=\\p{N})|(?<=\\p{N})(?=\\p{L})");
+    private static final int EXACT_SCORE = 3, PREFIX_SCORE = 2, FUZZY_SCORE = 1, NAME_SCORE = 3;
+    private static FeatureSearchIndex instance;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HashMap<String, ArtifactIndex> artifactIndices = new HashMap<>();
+    // sorted, so that tokens with a given prefix are adjacent
+    private final TreeMap<String, Set<Document>> documentsByToken = new TreeMap<>();
+    private final ExecutorService executor;
+    // whether a search has been requested, before that, artifacts are not indexed in the background
+    private volatile boolean isSearched = false;
+
+    private static class Document {
+        final ArtifactIndex artifactIndex;
+        final String featureID;
+        String name;
+        Object parentID;
+        Set<String> nameTokens, tokens;
+
+        Document(ArtifactIndex artifactIndex, String featureID) {
+            this.artifactIndex = artifactIndex;
+            this.featureID = featureID;
+        }
+    }
+
+    private static class ArtifactIndex {
+        final Artifact.FeatureModel artifact;
+        final Artifact.Path artifactPath;
+        final String key;
+        boolean isIndexed = false;
+        // the last indexed feature map, so it is not pinned when the artifact's feature model is reclaimed
+        WeakReference<APersistentMap> featuresMap = new WeakReference<>(null);
+        final HashMap<String, Document> documents = new HashMap<>();
+
+        ArtifactIndex(Artifact.FeatureModel artifact) {
+            this.artifact = artifact;
+            this.artifactPath = artifact.getPath();
+            this.key = getKey(artifactPath);
+        }
+    }
+
+    public static class Match {
+        @Expose
+        Artifact.Path artifactPath;
+
+        @Expose
+        String featureID;
+
+        @Expose
+        String name;
+
+        Match(Document document) {
+            this.artifactPath = document.artifactIndex.artifactPath;
+            this.featureID = document.featureID;
+            this.name = document.name;
+        }
+    }
+
+    private FeatureSearchIndex() {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "feature-search-indexing");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    public static FeatureSearchIndex getInstance() {
+        return instance == null ? instance = new FeatureSearchIndex() : instance;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("variED.searchIndex", "true"));
+    }
+
+    private static String getKey(Artifact.Path artifactPath) {
+        return artifactPath.toString().toLowerCase();
+    }
+
+    static Set<String> tokenize(String s, boolean splitCamelCase) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (s == null)
+            return tokens;
+        for (String word : WORD_SEPARATOR.split(s)) {
+            if (word.isEmpty())
+                continue;
+            tokens.add(word.toLowerCase());
+            // allows to find "DataEncryption" when searching for "encryption"
+            if (splitCamelCase)
+                for (String part : CAMEL_CASE_SEPARATOR.split(word))
+                    tokens.add(part.toLowerCase());
+        }
+        return tokens;
+    }
+
+    /**
+     * Registers an artifact. Its feature model is only indexed once it is loaded or searched for.
+     */
+    void add(Artifact artifact) {
+        if (!isEnabled() || !(artifact instanceof Artifact.FeatureModel))
+            return;
+        ArtifactIndex artifactIndex = new ArtifactIndex((Artifact.FeatureModel) artifact);
+        lock.writeLock().lock();
+        try {
+            removeArtifactIndex(artifactIndex.key);
+            artifactIndices.put(artifactIndex.key, artifactIndex);
+            if (isSearched)
+                scheduleIndex(artifactIndex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void scheduleIndex(ArtifactIndex artifactIndex) {
+        executor.execute(() -> {
+            try {
+                lock.readLock().lock();
+                try {
+                    // the artifact may have been removed or indexed in the meantime
+                    if (artifactIndices.get(artifactIndex.key) != artifactIndex || artifactIndex.isIndexed)
+                        return;
+                } finally {
+                    lock.readLock().unlock();
+                }
+                index(artifactIndex.artifactPath, artifactIndex.artifact.getCurrentFeatureModel(), true);
+            } catch (Throwable t) {
+                Logger.warn("could not index artifact {}: {}", artifactIndex.artifactPath, t.getMessage());
+            }
+        });
+    }
+
+    private void scheduleIndexOnFirstSearch() {
+        if (isSearched)
+            return;
+        lock.writeLock().lock();
+        try {
+            if (isSearched)
+                return;
+            isSearched = true;
+            Logger.info("indexing {} artifacts for feature search", artifactIndices.size());
+            for (ArtifactIndex artifactIndex : artifactIndices.values())
+                if (!artifactIndex.isIndexed)
+                    scheduleIndex(artifactIndex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(Artifact artifact) {
+        lock.writeLock().lock();
+        try {
+            removeArtifactIndex(getKey(artifact.getPath()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            artifactIndices.clear();
+            documentsByToken.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates an artifact's index entries after its feature model has been loaded or changed.
+     */
+    void update(Artifact.Path artifactPath, APersistentMap featureModel) {
+        index(artifactPath, featureModel, false);
+    }
+
+    private void index(Artifact.Path artifactPath, APersistentMap featureModel, boolean onlyInitially) {
+        // there are no features to index while in conflict
+        if (featureModel == null || !featureModel.containsKey(Keywords.FEATURES))
+            return;
+        APersistentMap featuresMap = (APersistentMap) featureModel.get(Keywords.FEATURES);
+        lock.writeLock().lock();
+        try {
+            ArtifactIndex artifactIndex = artifactIndices.get(getKey(artifactPath));
+            // the artifact may have been removed, or already been indexed from a newer snapshot
+            if (artifactIndex == null || (onlyInitially && artifactIndex.isIndexed))
+                return;
+            APersistentMap oldFeaturesMap = artifactIndex.featuresMap.get();
+            if (oldFeaturesMap == featuresMap)
+                return;
+            if (oldFeaturesMap != null)
+                PersistentMapDiff.diff(oldFeaturesMap, featuresMap, (featureID, oldFeatureMap, newFeatureMap) -> {
+                    if (newFeatureMap != null)
+                        indexFeature(artifactIndex, (String) featureID, (APersistentMap) newFeatureMap);
+                    else
+                        removeDocument(artifactIndex.documents.remove(featureID));
+                });
+            else {
+                for (Object e : featuresMap) {
+                    IMapEntry entry = (IMapEntry) e;
+                    indexFeature(artifactIndex, (String) entry.key(), (APersistentMap) entry.val());
+                }
+                artifactIndex.documents.values().removeIf(document -> {
+                    if (featuresMap.containsKey(document.featureID))
+                        return false;
+                    removeDocument(document);
+                    return true;
+                });
+            }
+            artifactIndex.featuresMap = new WeakReference<>(featuresMap);
+            artifactIndex.isIndexed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexFeature(ArtifactIndex artifactIndex, String featureID, APersistentMap featureMap) {
+        Document document = artifactIndex.documents.get(featureID);
+        if (document == null)
+            artifactIndex.documents.put(featureID, document = new Document(artifactIndex, featureID));
+        else
+            removeDocument(document);
+        document.name = (String) featureMap.get(Keywords.NAME);
+        document.parentID = featureMap.get(Keywords.PARENT_ID);
+        document.nameTokens = tokenize(document.name, true);
+        document.tokens = new HashSet<>(document.nameTokens);
+        document.tokens.addAll(tokenize((String) featureMap.get(Keywords.DESCRIPTION), true));
+        for (String token : document.tokens)
+            documentsByToken.computeIfAbsent(token, _token -> new HashSet<>()).add(document);
+    }
+
+    private void removeDocument(Document document) {
+        if (document == null)
+            return;
+        for (String token : document.tokens) {
+            Set<Document> documents = documentsByToken.get(token);
+            if (documents != null && documents.remove(document) && documents.isEmpty())
+                documentsByToken.remove(token);
+        }
+    }
+
+    private void removeArtifactIndex(String key) {
+        ArtifactIndex artifactIndex = artifactIndices.remove(key);
+        if (artifactIndex != null)
+            for (Document document : artifactIndex.documents.values())
+                removeDocument(document);
+    }
+
+    private static int getMaximumDistance(String token) {
+        return token.length() < 4 ? 0 : token.length() < 8 ? 1 : 2;
+    }
+
+    /**
+     * Returns the Levenshtein distance of two strings, or a value above the maximum distance if it is exceeded.
+     */
+    static int getDistance(String a, String b, int maximumDistance) {
+        if (Math.abs(a.length() - b.length()) > maximumDistance)
+            return maximumDistance + 1;
+        int[] previousRow = new int[b.length() + 1], row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++)
+            previousRow[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            row[0] = i;
+            int minimum = row[0];
+            for (int j = 1; j <= b.length(); j++) {
+                row[j] = Math.min(Math.min(row[j - 1], previousRow[j]) + 1,
+                        previousRow[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+                minimum = Math.min(minimum, row[j]);
+            }
+            if (minimum > maximumDistance)
+                return maximumDistance + 1;
+            int[] temporaryRow = previousRow;
+            previousRow = row;
+            row = temporaryRow;
+        }
+        return previousRow[b.length()];
+    }
+
+    private void addScores(Map<Document, Integer> scores, String token, Set<Document> documents, int score) {
+        for (Document document : documents)
+            scores.merge(document, score + (document.nameTokens.contains(token) ? NAME_SCORE : 0), Math::max);
+    }
+
+    private Map<Document, Integer> getScores(String queryToken, boolean isFuzzy) {
+        Map<Document, Integer> scores = new HashMap<>();
+        for (Map.Entry<String, Set<Document>> entry :
+                documentsByToken.subMap(queryToken, true, queryToken + Character.MAX_VALUE, false).entrySet())
+            addScores(scores, entry.getKey(), entry.getValue(),
+                    entry.getKey().length() == queryToken.length() ? EXACT_SCORE : PREFIX_SCORE);
+        int maximumDistance = getMaximumDistance(queryToken);
+        if (isFuzzy && maximumDistance > 0)
+            for (Map.Entry<String, Set<Document>> entry : documentsByToken.entrySet())
+                if (!entry.getKey().startsWith(queryToken) &&
+                        getDistance(queryToken, entry.getKey(), maximumDistance) <= maximumDistance)
+                    addScores(scores, entry.getKey(), entry.getValue(), FUZZY_SCORE);
+        return scores;
+    }
+
+    private static boolean isLive(Document document) {
+        // removed features and their subtrees are still indexed, but not reachable from the root
+        ArtifactIndex artifactIndex = document.artifactIndex;
+        Object parentID = document.parentID;
+        for (int depth = 0; parentID != null; depth++) {
+            Document parent = parentID instanceof String ? artifactIndex.documents.get(parentID) : null;
+            if (parent == null || depth > artifactIndex.documents.size())
+                return false;
+            parentID = parent.parentID;
+        }
+        return true;
+    }
+
+    /**
+     * Searches for features whose names or descriptions contain all words of a query (or words starting with them).
+     * Fuzzy search also matches words within a small edit distance.
+     */
+    public List<Match> search(String query, boolean isFuzzy, int limit) {
+        Set<String> queryTokens = tokenize(query, false);
+        limit = Math.max(1, Math.min(limit, MAXIMUM_MATCHES));
+        if (queryTokens.isEmpty())
+            return new ArrayList<>();
+        scheduleIndexOnFirstSearch();
+        long startTime = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            Map<Document, Integer> scores = null;
+            for (String queryToken : queryTokens) {
+                Map<Document, Integer> tokenScores = getScores(queryToken, isFuzzy);
+                if (scores != null) {
+                    scores.keySet().retainAll(tokenScores.keySet());
+                    for (Map.Entry<Document, Integer> entry : scores.entrySet())
+                        entry.setValue(entry.getValue() + tokenScores.get(entry.getKey()));
+                } else
+                    scores = tokenScores;
+                if (scores.isEmpty())
+                    break;
+            }
+
+            List<Map.Entry<Document, Integer>> rankedDocuments = new ArrayList<>(scores.entrySet());
+            rankedDocuments.sort(Comparator.<Map.Entry<Document, Integer>>comparingInt(entry -> -entry.getValue())
+                    .thenComparingInt(entry -> entry.getKey().name == null ? 0 : entry.getKey().name.length())
+                    .thenComparing(entry -> entry.getKey().artifactIndex.key));
+            // liveness is only checked for the best-ranked documents
+            List<Match> matches = new ArrayList<>();
+            for (Map.Entry<Document, Integer> entry : rankedDocuments) {
+                if (matches.size() >= limit)
+                    break;
+                if (isLive(entry.getKey()))
+                    matches.add(new Match(entry.getKey()));
+            }
+            Logger.debug("searched {} tokens for \"{}\" in {} ms", documentsByToken.size(), query,
+                    (System.nanoTime() - startTime) / 1000000.0);
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return artifactIndices.values().stream().mapToInt(artifactIndex -> artifactIndex.documents.size()).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
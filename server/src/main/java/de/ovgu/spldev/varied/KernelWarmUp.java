@@ -0,0 +1,87 @@
+package de.ovgu.spldev.varied;
+
+import clojure.lang.APersistentMap;
+import clojure.lang.IMapEntry;
+import de.ovgu.spldev.varied.kernel.ClientSite;
+import de.ovgu.spldev.varied.kernel.Kernel;
+import de.ovgu.spldev.varied.kernel.Keywords;
+import de.ovgu.spldev.varied.util.FeatureModelUtils;
+import org.pmw.tinylog.Logger;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import java.util.UUID;
+
+/**
+ * Boots the kernel in the background as soon as the server starts, so that the first collaborator
+ * does not have to wait for Clojure to load. Afterwards, runs a synthetic workload on a bundled
+ * feature model so that the kernel's hot paths are JIT-compiled before the server reports readiness.
+ * The workload may be disabled with the variED.warmUp system property.
+ */
+@WebListener
+public class KernelWarmUp implements ServletContextListener {
+    private static final String WARM_UP_ARTIFACT = "uvr2web";
+    private static final int ITERATIONS = Integer.getInteger("variED.warmUpIterations", 5);
+    private static final int OPERATIONS_PER_ITERATION = 20;
+    private static volatile boolean ready = false;
+    private Thread thread;
+
+    public static boolean isReady() {
+        return ready;
+    }
+
+    public void contextInitialized(ServletContextEvent servletContextEvent) {
+        thread = new Thread(this::warmUp, "kernel-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void contextDestroyed(ServletContextEvent servletContextEvent) {
+        thread.interrupt();
+    }
+
+    private void warmUp() {
+        long startTime = System.currentTimeMillis();
+        try {
+            Kernel.boot();
+            if (Boolean.parseBoolean(System.getProperty("variED.warmUp", "true")))
+                for (int i = 0; i < ITERATIONS && !Thread.currentThread().isInterrupted(); i++) {
+                    long iterationStartTime = System.currentTimeMillis();
+                    // the kernel must not be called concurrently with collaborative sessions
+                    synchronized (WebSocket.lock) {
+                        runWorkload();
+                    }
+                    Logger.debug("warm-up iteration {} took {} ms", i + 1, System.currentTimeMillis() - iterationStartTime);
+                }
+        } catch (Throwable t) {
+            Logger.error(t, "kernel warm-up failed, continuing anyway");
+        }
+        ready = true;
+        Logger.info("server ready after {} ms", System.currentTimeMillis() - startTime);
+    }
+
+    private static String getRootID(APersistentMap featureModel) {
+        for (Object e : (APersistentMap) featureModel.get(Keywords.FEATURES)) {
+            IMapEntry entry = (IMapEntry) e;
+            if (((APersistentMap) entry.val()).get(Keywords.PARENT_ID) == null)
+                return (String) entry.key();
+        }
+        throw new RuntimeException("feature model has no root feature");
+    }
+
+    private static void runWorkload() {
+        APersistentMap featureModel = FeatureModelUtils.loadKernelFeatureModel(
+                ProjectManager.getResourcePath("examples/" + WARM_UP_ARTIFACT + ".xml"));
+        String rootID = getRootID(featureModel);
+        Kernel kernel = new Kernel(new Artifact.Path("warm-up", WARM_UP_ARTIFACT), featureModel);
+        UUID siteID = UUID.randomUUID();
+        ClientSite clientSite = new ClientSite(siteID, kernel.siteJoined(siteID)[0]);
+        for (int i = 0; i < OPERATIONS_PER_ITERATION; i++)
+            kernel.forwardMessage(clientSite.generateCreateFeatureBelow(rootID));
+        kernel.forwardMessage(clientSite.generateHeartbeat());
+        kernel.GC();
+        FeatureModelUtils.exportFeatureModel(kernel.getCombinedEffect(), FeatureModelUtils.XML_FORMAT);
+        kernel.siteLeft(siteID);
+    }
+}
@@ -0,0 +1,71 @@
+package de.ovgu.spldev.varied;
+
+import org.pmw.tinylog.Level;
+import org.pmw.tinylog.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log for events that happen once or more per message, such as sending and receiving messages.
+ * Events are put into a bounded queue that is drained by a background thread, so neither formatting
+ * nor writing happens on the message path. Events beyond a rate limit are sampled out, events that do
+ * not fit into the queue are dropped, and both are reported as a count once the log catches up.
+ */
+class MessageLog {
+    private static final int CAPACITY = Integer.getInteger("variED.messageLogCapacity", 1024);
+    private static final int EVENTS_PER_SECOND = Integer.getInteger("variED.messageLogRate", 100);
+    private static final ArrayBlockingQueue<Event> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private static final AtomicLong currentSecond = new AtomicLong();
+    private static final AtomicInteger eventsInCurrentSecond = new AtomicInteger();
+    private static final LongAdder skippedEvents = new LongAdder();
+
+    private static class Event {
+        String message;
+        Object[] arguments;
+
+        Event(String message, Object[] arguments) {
+            this.message = message;
+            this.arguments = arguments;
+        }
+    }
+
+    static {
+        Thread thread = new Thread(MessageLog::drain, "message-log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static boolean isSampled() {
+        long second = System.nanoTime() / 1000000000;
+        if (currentSecond.get() != second && currentSecond.getAndSet(second) != second)
+            eventsInCurrentSecond.set(0);
+        return eventsInCurrentSecond.incrementAndGet() <= EVENTS_PER_SECOND;
+    }
+
+    static void info(String message, Object... arguments) {
+        if (Logger.getLevel(MessageLog.class).ordinal() > Level.INFO.ordinal())
+            return;
+        if (!isSampled() || !queue.offer(new Event(message, arguments)))
+            skippedEvents.increment();
+    }
+
+    private static void drain() {
+        while (true) {
+            Event event;
+            try {
+                event = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Logger.info(event.message, event.arguments);
+            if (queue.isEmpty()) {
+                long skipped = skippedEvents.sumThenReset();
+                if (skipped > 0)
+                    Logger.info("{} message events were sampled out or dropped", skipped);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package de.ovgu.spldev.varied;
+
+import de.ovgu.spldev.varied.messaging.Api;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of counters and latency histograms, exposed in the Prometheus text format by the metrics servlet.
+ * Recording only increments striped adders, so it does not contend on the hot path. Gauges (e.g., session
+ * counts) are not recorded at all, but computed when the metrics are scraped.
+ */
+public class Metrics {
+    // created eagerly, as it is recorded into from several threads
+    private static final Metrics instance = new Metrics();
+    private final EnumMap<Api.TypeEnum, LongAdder> receivedMessages = createCounters(),
+            sentMessages = createCounters();
+    private final Histogram encodeDurations = new Histogram(), decodeDurations = new Histogram();
+    private final ConcurrentHashMap<String, Histogram> kernelCallDurations = new ConcurrentHashMap<>();
+
+    static class Histogram {
+        // upper bounds in seconds
+        private static final double[] BUCKETS = {
+                0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10
+        };
+        private final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+        private final LongAdder sum = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = new LongAdder();
+        }
+
+        void record(long nanoseconds) {
+            double seconds = nanoseconds / 1e9;
+            int i = 0;
+            while (i < BUCKETS.length && seconds > BUCKETS[i])
+                i++;
+            counts[i].increment();
+            sum.add(nanoseconds);
+        }
+
+        void write(StringBuilder output, String name, String labels) {
+            long count = 0;
+            for (int i = 0; i <= BUCKETS.length; i++) {
+                count += counts[i].sum();
+                output.append(name).append("_bucket{").append(labels).append(labels.isEmpty() ? "" : ",")
+                        .append("le=\"").append(i < BUCKETS.length ? String.valueOf(BUCKETS[i]) : "+Inf").append("\"} ")
+                        .append(count).append('\n');
+            }
+            String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+            output.append(name).append("_sum").append(suffix).append(sum.sum() / 1e9).append('\n');
+            output.append(name).append("_count").append(suffix).append(count).append('\n');
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    private static EnumMap<Api.TypeEnum, LongAdder> createCounters() {
+        EnumMap<Api.TypeEnum, LongAdder> counters = new EnumMap<>(Api.TypeEnum.class);
+        for (Api.TypeEnum typeEnum : Api.TypeEnum.values())
+            counters.put(typeEnum, new LongAdder());
+        return counters;
+    }
+
+    public void recordReceivedMessage(Api.TypeEnum typeEnum) {
+        receivedMessages.get(typeEnum).increment();
+    }
+
+    public void recordSentMessage(Api.TypeEnum typeEnum) {
+        sentMessages.get(typeEnum).increment();
+    }
+
+    public void recordEncode(long nanoseconds) {
+        encodeDurations.record(nanoseconds);
+    }
+
+    public void recordDecode(long nanoseconds) {
+        decodeDurations.record(nanoseconds);
+    }
+
+    public void recordKernelCall(String function, long nanoseconds) {
+        Histogram histogram = kernelCallDurations.get(function);
+        if (histogram == null)
+            histogram = kernelCallDurations.computeIfAbsent(function, _function -> new Histogram());
+        histogram.record(nanoseconds);
+    }
+
+    static void writeHeader(StringBuilder output, String name, String type, String help) {
+        output.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void writeCounters(StringBuilder output, String name, String help, EnumMap<Api.TypeEnum, LongAdder> counters) {
+        writeHeader(output, name, "counter", help);
+        for (Map.Entry<Api.TypeEnum, LongAdder> entry : counters.entrySet())
+            output.append(name).append("{type=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().sum()).append('\n');
+    }
+
+    void write(StringBuilder output) {
+        writeCounters(output, "varied_messages_received_total", "Messages received from collaborators.", receivedMessages);
+        writeCounters(output, "varied_messages_sent_total", "Messages sent to collaborators.", sentMessages);
+        writeHeader(output, "varied_message_encode_seconds", "histogram", "Time spent encoding messages.");
+        encodeDurations.write(output, "varied_message_encode_seconds", "");
+        writeHeader(output, "varied_message_decode_seconds", "histogram", "Time spent decoding messages.");
+        decodeDurations.write(output, "varied_message_decode_seconds", "");
+        writeHeader(output, "varied_kernel_call_seconds", "histogram", "Duration of kernel calls, including context switches.");
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(kernelCallDurations).entrySet())
+            entry.getValue().write(output, "varied_kernel_call_seconds", "function=\"" + escape(entry.getKey()) + "\"");
+    }
+}
@@ -0,0 +1,71 @@
+package de.ovgu.spldev.varied;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Exposes metrics in the Prometheus text format. Gauges describing collaborators and sessions are
+ * computed while scraping, which briefly takes the kernel lock as sessions are not thread-safe.
+ */
+@WebServlet("/metrics")
+public class MetricsServlet extends HttpServlet {
+    private static void writeGauge(StringBuilder output, String name, String labels, long value) {
+        output.append(name).append(labels.isEmpty() ? "" : "{" + labels + "}").append(' ').append(value).append('\n');
+    }
+
+    private static void writeGauges(StringBuilder output) {
+        Metrics.writeHeader(output, "varied_collaborators", "gauge", "Connected collaborators.");
+        writeGauge(output, "varied_collaborators", "", CollaboratorManager.getInstance().getCollaborators().size());
+        Metrics.writeHeader(output, "varied_outgoing_queue_length", "gauge", "Messages waiting to be sent to a collaborator.");
+        for (Collaborator collaborator : CollaboratorManager.getInstance().getCollaborators())
+            writeGauge(output, "varied_outgoing_queue_length", "site=\"" + collaborator.getSiteID() + "\"",
+                    collaborator.getOutgoingQueueLength());
+
+        long sessions = 0, activeSessions = 0;
+        // samples of a metric are grouped below its header
+        StringBuilder collaboratorsOutput = new StringBuilder(), spectatorsOutput = new StringBuilder(),
+                historyBufferSizeOutput = new StringBuilder(), versionOutput = new StringBuilder();
+        for (Artifact artifact : ProjectManager.getInstance().getArtifacts()) {
+            if (!(artifact instanceof Artifact.FeatureModel))
+                continue;
+            CollaborativeSession.FeatureModel collaborativeSession = ((Artifact.FeatureModel) artifact).getExistingCollaborativeSession();
+            if (collaborativeSession == null)
+                continue;
+            sessions++;
+            if (!collaborativeSession.isInProcess())
+                continue;
+            activeSessions++;
+            String labels = "artifact=\"" + Metrics.escape(artifact.getPath().toString()) + "\"";
+            writeGauge(collaboratorsOutput, "varied_session_collaborators", labels, collaborativeSession.collaborators.size());
+            writeGauge(spectatorsOutput, "varied_session_spectators", labels, collaborativeSession.spectators.size());
+            writeGauge(historyBufferSizeOutput, "varied_kernel_history_buffer_size", labels,
+                    collaborativeSession.getKernel().getHistoryBufferSize());
+            writeGauge(versionOutput, "varied_kernel_version", labels, collaborativeSession.getKernel().getVersion());
+        }
+        Metrics.writeHeader(output, "varied_sessions", "gauge", "Collaborative sessions, active if joined by anyone.");
+        writeGauge(output, "varied_sessions", "state=\"active\"", activeSessions);
+        writeGauge(output, "varied_sessions", "state=\"idle\"", sessions - activeSessions);
+        Metrics.writeHeader(output, "varied_session_collaborators", "gauge", "Collaborators per active session.");
+        output.append(collaboratorsOutput);
+        Metrics.writeHeader(output, "varied_session_spectators", "gauge", "Spectators per active session.");
+        output.append(spectatorsOutput);
+        Metrics.writeHeader(output, "varied_kernel_history_buffer_size", "gauge", "Operations retained in a session's kernel context.");
+        output.append(historyBufferSizeOutput);
+        Metrics.writeHeader(output, "varied_kernel_version", "gauge", "Version of a session's combined effect.");
+        output.append(versionOutput);
+    }
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        StringBuilder output = new StringBuilder();
+        Metrics.getInstance().write(output);
+        synchronized (WebSocket.lock) {
+            writeGauges(output);
+        }
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(output.toString());
+    }
+}
@@ -9,6 +9,8 @@ import java.util.concurrent.ConcurrentHashMap;
 public class Project {
     private String name;
     private ConcurrentHashMap<String, Artifact> artifacts = new ConcurrentHashMap<>();
+    // set while the project is registered with the project manager
+    private ArtifactCatalog artifactCatalog;
 
     Project(String name) {
         if (!StringUtils.isPresent(name))
@@ -42,11 +44,27 @@ public class Project {
         if (artifacts.containsKey(name))
             throw new RuntimeException("another artifact already has that name, choose another name");
         artifacts.put(name, artifact);
+        if (artifactCatalog != null)
+            artifactCatalog.add(artifact);
+    }
+
+    Artifact forkArtifact(Artifact artifact, String name) {
+        Logger.info("forking artifact {} into project {}", artifact, this);
+        if (!(artifact instanceof Artifact.FeatureModel))
+            throw new RuntimeException("artifact can not be forked");
+        Artifact fork = ((Artifact.FeatureModel) artifact).fork(this, name);
+        addArtifact(fork);
+        return fork;
     }
 
     public void removeArtifact(Artifact artifact) {
         Logger.info("removing artifact {} from project {}", artifact, this);
-        artifacts.remove(artifact.getName().toLowerCase());
+        if (artifacts.remove(artifact.getName().toLowerCase()) != null && artifactCatalog != null)
+            artifactCatalog.remove(artifact);
+    }
+
+    void setArtifactCatalog(ArtifactCatalog artifactCatalog) {
+        this.artifactCatalog = artifactCatalog;
     }
 
     public Collection<Artifact> getArtifacts() {
@@ -0,0 +1,69 @@
+package de.ovgu.spldev.varied;
+
+import clojure.lang.APersistentMap;
+import de.ovgu.spldev.varied.kernel.Keywords;
+import de.ovgu.spldev.varied.util.FeatureModelUtils;
+import de.ovgu.spldev.varied.util.StringUtils;
+import org.pmw.tinylog.Logger;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports all artifacts of a project as a ZIP archive, e.g., GET /export?project=Examples&format=XmlFeatureModelFormat.
+ * Each artifact's current snapshot is written directly into the response stream, so the archive is never held
+ * in memory as a whole and live sessions are not locked while exporting.
+ */
+@WebServlet("/export")
+public class ProjectExportServlet extends HttpServlet {
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String projectName = request.getParameter("project"),
+                formatName = request.getParameter("format") != null ? request.getParameter("format") : FeatureModelUtils.XML_FORMAT;
+        Project project = StringUtils.isPresent(projectName) ? ProjectManager.getInstance().getProject(projectName) : null;
+        if (project == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "project not found");
+            return;
+        }
+        String fileExtension;
+        try {
+            fileExtension = FeatureModelUtils.getFileExtension(formatName);
+        } catch (RuntimeException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        Logger.info("exporting project {} with format {}", project, formatName);
+        response.setContentType("application/zip");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + project.getName() + ".zip\"");
+        ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(response.getOutputStream()));
+        // the writer is only flushed per entry, closing it would close the archive
+        Writer writer = new OutputStreamWriter(zipOutputStream, StandardCharsets.UTF_8);
+        for (Artifact artifact : project.getArtifacts()) {
+            if (!(artifact instanceof Artifact.FeatureModel))
+                continue;
+            APersistentMap combinedEffect;
+            try {
+                combinedEffect = ((Artifact.FeatureModel) artifact).getCurrentFeatureModel();
+            } catch (RuntimeException e) {
+                Logger.warn("skipping artifact {} in export: {}", artifact, e.getMessage());
+                continue;
+            }
+            if (!combinedEffect.containsKey(Keywords.FEATURES)) {
+                Logger.warn("skipping artifact {} in export, it is in conflict", artifact);
+                continue;
+            }
+            zipOutputStream.putNextEntry(new ZipEntry(artifact.getName() + "." + fileExtension));
+            FeatureModelUtils.exportFeatureModel(combinedEffect, formatName, writer);
+            writer.flush();
+            zipOutputStream.closeEntry();
+        }
+        zipOutputStream.finish();
+        zipOutputStream.flush();
+    }
+}
@@ -1,24 +1,27 @@
 package de.ovgu.spldev.varied;
 
 import com.google.common.io.Resources;
-import de.ovgu.spldev.varied.util.FeatureModelUtils;
 import de.ovgu.spldev.varied.util.StringUtils;
 import org.pmw.tinylog.Logger;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Scanner;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class ProjectManager {
     private static ProjectManager instance;
     private ConcurrentHashMap<String, Project> projects = new ConcurrentHashMap<>();
+    private ArtifactCatalog artifactCatalog = new ArtifactCatalog();
     static String EMPTY = "Empty";
+    private static String FEATURE_IDE_REVISION = "56bb944775e2a3087a1bd8f93334aa4f7a6712dc";
+    // may be overridden to serve the FeatureIDE examples from another (e.g., local) host
+    private static String FEATURE_IDE_URL = System.getProperty("variED.featureIDEURL",
+            "https://raw.githubusercontent.com/FeatureIDE/FeatureIDE/" + FEATURE_IDE_REVISION);
 
     {
         resetInstance();
@@ -33,6 +36,7 @@ public class ProjectManager {
 
     public void resetInstance() {
         projects.clear();
+        artifactCatalog.clear();
         Project examplesProject = new Project("Examples");
         Project featureIDEProject = new Project("FeatureIDE");
 
@@ -43,6 +47,7 @@ public class ProjectManager {
         addProject(examplesProject);
 
         // adds the FeatureIDE examples as of June 2018
+        Map<String, String> remoteArtifactURLs = new HashMap<>();
         for (String artifactName : new String[]{
                 "aaed2000", "adderII", "adder", "aeb", "aim711", "aki3068net", "am31_sim", "APL-Model", "APL",
                 "asb2305", "asb", "assabet", "at91sam7sek", "at91sam7xek", "atlas_mips32_4kc", "atlas_mips64_5kc",
@@ -63,11 +68,13 @@ public class ProjectManager {
                 "sparclite_sim", "stb", "stdeval1", "stm3210e_eval", "TightVNC", "ts1000", "ts6", "tx39_sim",
                 "uClibc-Base", "uClibc-Distribution", "uClibc", "uE250", "vads", "Violet", "viper", "vrc4373",
                 "vrc4375", "WaterlooGenerated", "XSEngine"
-        })
-            addRemoteArtifact(featureIDEProject, artifactName,
-                    "https://raw.githubusercontent.com/FeatureIDE/FeatureIDE/56bb944775e2a3087a1bd8f93334aa4f7a6712dc" +
-                            "/plugins/de.ovgu.featureide.examples/featureide_examples/FeatureModels/" + artifactName + "/model.xml");
+        }) {
+            String url = getFeatureIDEExampleURL(artifactName);
+            addRemoteArtifact(featureIDEProject, artifactName, url, FEATURE_IDE_REVISION);
+            remoteArtifactURLs.put(url, FEATURE_IDE_REVISION);
+        }
         addProject(featureIDEProject);
+        RemoteArtifactCache.getInstance().prefetch(remoteArtifactURLs);
     }
 
     Project getProject(String name) {
@@ -84,22 +91,47 @@ public class ProjectManager {
         if (projects.containsKey(name))
             throw new RuntimeException("another project already has that name, choose another name");
         projects.put(name, project);
+        for (Artifact artifact : project.getArtifacts())
+            artifactCatalog.add(artifact);
+        project.setArtifactCatalog(artifactCatalog);
+    }
+
+    Project getProjectForNewArtifact(Artifact.Path artifactPath) {
+        if (getArtifact(artifactPath) != null)
+            throw new RuntimeException("artifact for path " + artifactPath + " already exists");
+        Project project = getProject(artifactPath);
+        if (project == null) {
+            String projectName = artifactPath.getProjectName();
+            Logger.info("adding new project {}", projectName);
+            project = new Project(projectName);
+            addProject(project);
+        }
+        return project;
     }
 
-    void addRemoteArtifact(Project project, String artifactName, String url) {
+    void addRemoteArtifact(Project project, String artifactName, String url, String revision) {
         // use this with caution, as attackers may use it maliciously!
         project.addArtifact(new Artifact.FeatureModel(project, artifactName,
                 () -> {
                     try {
-                        Logger.info("loading remote artifact from " + url);
-                        String source = new Scanner(new URL(url).openStream(), "UTF-8").useDelimiter("\\A").next();
-                        return FeatureModelUtils.loadFeatureModel(source, artifactName + ".xml");
+                        Logger.info("loading remote artifact from {}", url);
+                        String source = RemoteArtifactCache.getInstance().get(url, revision);
+                        return FeatureModelStore.getInstance().get(source, artifactName + ".xml");
                     } catch (IOException e) {
                         throw new RuntimeException("could not add remote artifact at URL " + url);
                     }
                 }));
     }
 
+    static String getFeatureIDEExampleURL(String artifactName) {
+        return FEATURE_IDE_URL + "/plugins/de.ovgu.featureide.examples/featureide_examples/FeatureModels/" +
+                artifactName + "/model.xml";
+    }
+
+    public static String getFeatureIDEExampleSource(String artifactName) throws IOException {
+        return RemoteArtifactCache.getInstance().get(getFeatureIDEExampleURL(artifactName), FEATURE_IDE_REVISION);
+    }
+
     public static Path getResourcePath(String fileName) {
         try {
             return Paths.get(Resources.getResource(fileName).toURI());
@@ -115,7 +147,11 @@ public class ProjectManager {
 
     public void removeProject(Project project) {
         Logger.info("removing project {}", project);
-        projects.remove(project.getName().toLowerCase());
+        if (projects.remove(project.getName().toLowerCase()) != null) {
+            project.setArtifactCatalog(null);
+            for (Artifact artifact : project.getArtifacts())
+                artifactCatalog.remove(artifact);
+        }
     }
 
     Project getProject(Artifact.Path artifactPath) {
@@ -134,17 +170,14 @@ public class ProjectManager {
     }
 
     Collection<Artifact> getArtifacts() {
-        Collection<Artifact> artifacts = new HashSet<>();
-        for (Project project : getProjects())
-            artifacts.addAll(project.getArtifacts());
-        return artifacts;
+        return artifactCatalog.getArtifacts();
     }
 
     Collection<Artifact.Path> getArtifactPaths() {
-        Collection<Artifact.Path> artifactPaths = new HashSet<>();
-        for (Project project : getProjects())
-            for (Artifact artifact : project.getArtifacts())
-                artifactPaths.add(artifact.getPath());
-        return artifactPaths;
+        return artifactCatalog.getListing().artifactPaths;
+    }
+
+    ArtifactCatalog getArtifactCatalog() {
+        return artifactCatalog;
     }
 }
@@ -0,0 +1,24 @@
+package de.ovgu.spldev.varied;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Health check for load balancers, only reports readiness after the kernel has been warmed up.
+ */
+@WebServlet("/ready")
+public class ReadinessServlet extends HttpServlet {
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        if (KernelWarmUp.isReady())
+            response.getWriter().write("ready");
+        else {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.getWriter().write("warming up");
+        }
+    }
+}
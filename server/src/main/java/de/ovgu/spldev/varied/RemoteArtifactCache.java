@@ -0,0 +1,116 @@
+package de.ovgu.spldev.varied;
+
+import com.google.common.io.CharStreams;
+import de.ovgu.spldev.varied.util.HashUtils;
+import org.pmw.tinylog.Logger;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-disk cache for the sources of remote artifacts.
+ * Entries are addressed by the revision (e.g., a commit hash) and URL they were fetched from.
+ * As long as the URL pins a fixed revision, an entry never becomes stale, so the cache is consulted
+ * before the network. This allows the server to work offline once the cache has been filled.
+ */
+public class RemoteArtifactCache {
+    private static final int TIMEOUT = 10000;
+    private static RemoteArtifactCache instance;
+    private Path directory;
+    private ExecutorService prefetchExecutor;
+
+    RemoteArtifactCache(Path directory, int prefetchThreads) {
+        this.directory = directory;
+        this.prefetchExecutor = Executors.newFixedThreadPool(prefetchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "remote-artifact-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static RemoteArtifactCache getInstance() {
+        return instance == null
+                ? instance = new RemoteArtifactCache(
+                Paths.get(System.getProperty("variED.cacheDirectory",
+                        Paths.get(System.getProperty("java.io.tmpdir"), "variED-cache").toString())),
+                Integer.getInteger("variED.cachePrefetchThreads", 4))
+                : instance;
+    }
+
+    private static String toFileName(String s) {
+        return s.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    Path getEntryPath(String url, String revision) {
+        return directory.resolve(toFileName(revision)).resolve(HashUtils.sha256(url));
+    }
+
+    private static String fetch(String url) throws IOException {
+        Logger.info("fetching remote artifact from {}", url);
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+            return CharStreams.toString(reader);
+        }
+    }
+
+    private static void store(Path entryPath, String source) throws IOException {
+        Files.createDirectories(entryPath.getParent());
+        Path temporaryPath = Files.createTempFile(entryPath.getParent(), entryPath.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporaryPath, source.getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temporaryPath, entryPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryPath, entryPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    private static String read(Path entryPath) throws IOException {
+        return new String(Files.readAllBytes(entryPath), StandardCharsets.UTF_8);
+    }
+
+    public String get(String url, String revision) throws IOException {
+        Path entryPath = getEntryPath(url, revision);
+        if (Files.isRegularFile(entryPath))
+            return read(entryPath);
+        try {
+            String source = fetch(url);
+            store(entryPath, source);
+            return source;
+        } catch (IOException e) {
+            // the entry may have been stored by a concurrent prefetch in the meantime
+            if (Files.isRegularFile(entryPath)) {
+                Logger.warn("could not fetch {}, falling back to cache", url);
+                return read(entryPath);
+            }
+            throw e;
+        }
+    }
+
+    public void prefetch(Map<String, String> urlsAndRevisions) {
+        urlsAndRevisions.forEach((url, revision) ->
+                prefetchExecutor.submit(() -> {
+                    Path entryPath = getEntryPath(url, revision);
+                    if (Files.isRegularFile(entryPath))
+                        return;
+                    try {
+                        store(entryPath, fetch(url));
+                    } catch (IOException e) {
+                        Logger.debug("could not prefetch {}: {}", url, e);
+                    }
+                }));
+    }
+}
@@ -0,0 +1,139 @@
+package de.ovgu.spldev.varied;
+
+import de.ovgu.spldev.varied.kernel.Kernel;
+import de.ovgu.spldev.varied.kernel.Keywords;
+import de.ovgu.spldev.varied.messaging.Message;
+import de.ovgu.spldev.varied.messaging.MessageSerializer;
+import org.pmw.tinylog.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the messages a collaborative session receives, so they can be replayed with {@link SessionReplay}.
+ * A recording spans from the first collaborator joining to the last one leaving. It starts with the
+ * feature model at that time and ends with the resulting feature model, so replays can check for divergence.
+ * Recordings are gzipped text files with one event per line: offset in microseconds, kind, site and payload.
+ * Events are serialized on the calling thread, but compressed and written on a separate thread.
+ */
+class SessionRecorder {
+    private static final String DIRECTORY = System.getProperty("variED.sessionRecordingDirectory");
+    private static ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "session-recording");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static final String START = "START", MODEL = "MODEL", JOIN = "JOIN", SPECTATE = "SPECTATE",
+            MESSAGE = "MESSAGE", LEAVE = "LEAVE", END = "END";
+
+    private Artifact.Path artifactPath;
+    private Supplier<Kernel.Snapshot> snapshotSupplier;
+    private boolean isRecording = false;
+    private long startTime;
+    private Map<UUID, Integer> siteIndices = new HashMap<>();
+    // only accessed on the recording thread
+    private Writer writer;
+
+    SessionRecorder(Artifact.Path artifactPath, Supplier<Kernel.Snapshot> snapshotSupplier) {
+        this.artifactPath = artifactPath;
+        this.snapshotSupplier = snapshotSupplier;
+    }
+
+    static boolean isEnabled() {
+        return DIRECTORY != null;
+    }
+
+    private void start() {
+        Kernel.Snapshot snapshot = snapshotSupplier.get();
+        // conflict descriptors can not initialize a kernel, so such a session can not be replayed
+        if (!snapshot.getCombinedEffect().containsKey(Keywords.FEATURES))
+            return;
+        long timestamp = System.currentTimeMillis();
+        Path path = Paths.get(DIRECTORY, (artifactPath + "-" + timestamp).replaceAll("[^A-Za-z0-9.-]", "_") + ".rec.gz");
+        Logger.info("recording collaborative session {} to {}", artifactPath, path);
+        isRecording = true;
+        startTime = System.nanoTime();
+        siteIndices.clear();
+        executor.submit(() -> {
+            try {
+                Files.createDirectories(path.getParent());
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        new GZIPOutputStream(Files.newOutputStream(path)), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                Logger.error(e);
+            }
+            write(line(0, START, String.valueOf(timestamp), artifactPath.toString()));
+            write(line(0, MODEL, "", Kernel.encode(snapshot)));
+        });
+    }
+
+    private static String line(long offset, String kind, String site, String payload) {
+        return offset + "\t" + kind + "\t" + site + "\t" + payload + "\n";
+    }
+
+    private void write(String line) {
+        if (writer == null)
+            return;
+        try {
+            writer.write(line);
+        } catch (IOException e) {
+            Logger.error(e);
+            writer = null;
+        }
+    }
+
+    private void record(String kind, UUID siteID, String payload) {
+        Integer siteIndex = siteIndices.computeIfAbsent(siteID, _siteID -> siteIndices.size());
+        String line = line((System.nanoTime() - startTime) / 1000, kind, siteIndex.toString(), payload);
+        executor.submit(() -> write(line));
+    }
+
+    void recordJoin(UUID siteID, boolean isSpectator) {
+        if (!isRecording)
+            start();
+        if (isRecording)
+            record(isSpectator ? SPECTATE : JOIN, siteID, siteID.toString());
+    }
+
+    void recordMessage(UUID siteID, Message message) {
+        if (isRecording)
+            record(MESSAGE, siteID, MessageSerializer.toJson(message));
+    }
+
+    void recordLeave(UUID siteID) {
+        if (isRecording)
+            record(LEAVE, siteID, "");
+    }
+
+    void stop() {
+        if (!isRecording)
+            return;
+        isRecording = false;
+        Kernel.Snapshot snapshot = snapshotSupplier.get();
+        long offset = (System.nanoTime() - startTime) / 1000;
+        executor.submit(() -> {
+            write(line(offset, END, "", Kernel.encode(snapshot)));
+            if (writer != null)
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Logger.error(e);
+                }
+            writer = null;
+        });
+    }
+}
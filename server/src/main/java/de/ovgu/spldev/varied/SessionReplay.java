@@ -0,0 +1,173 @@
+package de.ovgu.spldev.varied;
+
+import clojure.lang.APersistentMap;
+import de.ovgu.spldev.varied.kernel.FeatureModelDiff;
+import de.ovgu.spldev.varied.kernel.Kernel;
+import de.ovgu.spldev.varied.kernel.Keywords;
+import de.ovgu.spldev.varied.messaging.Message;
+import de.ovgu.spldev.varied.messaging.MessageSerializer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replays a recording made by {@link SessionRecorder} against a fresh collaborative session, e.g., to benchmark
+ * kernel changes with realistic traffic. Collaborators are simulated by sockets that encode, but discard, all
+ * messages sent to them. Events are replayed with their original timing or as fast as possible.
+ * Usage: SessionReplay recording.rec.gz [--maximum-speed]
+ */
+public class SessionReplay {
+    public static class Result {
+        int events, messages, errors;
+        long duration;
+        long[] latencies;
+        APersistentMap recordedFeatureModel, replayedFeatureModel;
+
+        private long getPercentile(double percentile) {
+            return latencies.length == 0 ? 0 : latencies[(int) Math.ceil(percentile * latencies.length) - 1];
+        }
+
+        public double getThroughput() {
+            return duration == 0 ? 0 : messages / (duration / 1e9);
+        }
+
+        /**
+         * Returns whether the replay resulted in another feature model than the recorded session, or null
+         * if the recording has no resulting feature model (e.g., because the server was stopped).
+         */
+        public Boolean isDivergent() {
+            return recordedFeatureModel == null ? null : !getDivergence().isEmpty();
+        }
+
+        FeatureModelDiff getDivergence() {
+            if (!recordedFeatureModel.containsKey(Keywords.FEATURES) || !replayedFeatureModel.containsKey(Keywords.FEATURES))
+                throw new RuntimeException("feature model not available while in conflict");
+            return FeatureModelDiff.diff(recordedFeatureModel, replayedFeatureModel);
+        }
+
+        public String toString() {
+            StringBuilder report = new StringBuilder()
+                    .append(String.format("replayed %d events (%d messages, %d errors) in %.1f ms%n",
+                            events, messages, errors, duration / 1e6))
+                    .append(String.format("throughput: %.1f messages/s%n", getThroughput()))
+                    .append(String.format("latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                            getPercentile(0.5) / 1e6, getPercentile(0.9) / 1e6, getPercentile(0.99) / 1e6,
+                            getPercentile(1) / 1e6));
+            if (recordedFeatureModel == null)
+                report.append("divergence: unknown, the recording is incomplete\n");
+            else if (!recordedFeatureModel.containsKey(Keywords.FEATURES) || !replayedFeatureModel.containsKey(Keywords.FEATURES))
+                report.append("divergence: ").append(recordedFeatureModel.equals(replayedFeatureModel) ? "none" : "conflicts differ").append('\n');
+            else {
+                FeatureModelDiff divergence = getDivergence();
+                report.append("divergence: ").append(divergence.isEmpty() ? "none" : divergence.toString()).append('\n');
+            }
+            return report.toString();
+        }
+    }
+
+    private static class ReplayWebSocket extends WebSocket {
+        private MessageSerializer.MessageEncoder encoder = new MessageSerializer.MessageEncoder();
+
+        @Override
+        void send(Message.IEncodable message) {
+            encoder.encode((Message) message);
+        }
+    }
+
+    public static Result replay(Path recordingPath, boolean isMaximumSpeed) throws IOException {
+        Result result = new Result();
+        List<Long> latencies = new ArrayList<>();
+        Map<String, Collaborator> collaborators = new HashMap<>();
+        Artifact.Path artifactPath = null;
+        CollaborativeSession.FeatureModel collaborativeSession = null;
+        long startTime = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(recordingPath)), StandardCharsets.UTF_8))) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length != 4)
+                    throw new RuntimeException("invalid recording line " + line);
+                long offset = Long.parseLong(fields[0]);
+                String kind = fields[1], site = fields[2], payload = fields[3];
+
+                if (kind.equals(SessionRecorder.START)) {
+                    String[] parts = payload.split(Artifact.Path.SEPARATOR, 2);
+                    artifactPath = new Artifact.Path(parts[0], parts.length > 1 ? parts[1] : null);
+                    continue;
+                }
+                if (kind.equals(SessionRecorder.MODEL)) {
+                    collaborativeSession = new CollaborativeSession.FeatureModel(artifactPath, Kernel.decode(payload));
+                    startTime = System.nanoTime();
+                    continue;
+                }
+                if (collaborativeSession == null)
+                    throw new RuntimeException("recording does not start with a feature model");
+                if (kind.equals(SessionRecorder.END)) {
+                    result.recordedFeatureModel = Kernel.decode(payload);
+                    break;
+                }
+
+                if (!isMaximumSpeed) {
+                    long delay = startTime + offset * 1000 - System.nanoTime();
+                    if (delay > 0)
+                        try {
+                            Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                }
+
+                result.events++;
+                if (kind.equals(SessionRecorder.JOIN) || kind.equals(SessionRecorder.SPECTATE))
+                    collaborators.putIfAbsent(site, new Collaborator(UUID.fromString(payload), "site " + site, new ReplayWebSocket()));
+                Collaborator collaborator = collaborators.get(site);
+                if (collaborator == null)
+                    throw new RuntimeException("site " + site + " has not joined");
+
+                long eventStartTime = System.nanoTime();
+                synchronized (WebSocket.lock) {
+                    try {
+                        if (kind.equals(SessionRecorder.JOIN))
+                            collaborativeSession.join(collaborator);
+                        else if (kind.equals(SessionRecorder.SPECTATE))
+                            collaborativeSession.spectate(collaborator);
+                        else if (kind.equals(SessionRecorder.LEAVE))
+                            collaborativeSession.leave(collaborator);
+                        else if (kind.equals(SessionRecorder.MESSAGE)) {
+                            result.messages++;
+                            collaborativeSession.onMessage(collaborator, MessageSerializer.fromJson(payload));
+                        } else
+                            throw new RuntimeException("invalid event kind " + kind);
+                    } catch (RuntimeException | Message.InvalidMessageException e) {
+                        // the session would have answered with an error message, too
+                        result.errors++;
+                    }
+                }
+                if (kind.equals(SessionRecorder.MESSAGE))
+                    latencies.add(System.nanoTime() - eventStartTime);
+            }
+        }
+
+        if (collaborativeSession == null)
+            throw new RuntimeException("recording does not start with a feature model");
+        result.duration = System.nanoTime() - startTime;
+        result.latencies = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        result.replayedFeatureModel = collaborativeSession.getKernel().getCombinedEffect();
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1)
+            throw new RuntimeException("no recording given");
+        System.out.print(replay(Paths.get(args[0]), Arrays.asList(args).contains("--maximum-speed")));
+        System.exit(0);
+    }
+}
@@ -0,0 +1,117 @@
+package de.ovgu.spldev.varied;
+
+import org.pmw.tinylog.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Latency breakdown of one incoming message, from its decoding to the last send it caused.
+ * A trace is bound to the thread handling the message, so the kernel, encoder and collaborators can
+ * add spans without passing it around. Work done on other threads (e.g., analyses) is not traced.
+ * Traces slower than the threshold are appended to a dedicated log, written off the handling thread.
+ */
+public class Trace {
+    private static final long SLOW_TRACE_THRESHOLD = Long.getLong("variED.slowTraceThreshold", 100) * 1000000;
+    private static final Path SLOW_TRACE_LOG = Paths.get(System.getProperty("variED.slowTraceLog",
+            Paths.get(System.getProperty("java.io.tmpdir"), "variED-slow-traces.log").toString()));
+    private static final ThreadLocal<Trace> currentTrace = new ThreadLocal<>();
+    // the decoder runs on the same thread right before the message is handled
+    private static final ThreadLocal<Long> decodeDuration = new ThreadLocal<>();
+    private static ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "slow-trace-log");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class Span {
+        String name;
+        Object[] details;
+        long offset, duration;
+
+        Span(String name, Object[] details, long offset, long duration) {
+            this.name = name;
+            this.details = details;
+            this.offset = offset;
+            this.duration = duration;
+        }
+    }
+
+    private String type;
+    private UUID siteID;
+    private long timestamp = System.currentTimeMillis(), startTime = System.nanoTime(), decodeTime;
+    private List<Span> spans = new ArrayList<>();
+
+    private Trace(String type, UUID siteID, Long decodeTime) {
+        this.type = type;
+        this.siteID = siteID;
+        this.decodeTime = decodeTime != null ? decodeTime : 0;
+    }
+
+    static Trace start(String type, UUID siteID) {
+        Trace trace = new Trace(type, siteID, decodeDuration.get());
+        decodeDuration.remove();
+        currentTrace.set(trace);
+        return trace;
+    }
+
+    public static void recordDecode(long nanoseconds) {
+        decodeDuration.set(nanoseconds);
+    }
+
+    // details are only formatted when a slow trace is logged
+    public static void span(String name, long startTime, Object... details) {
+        Trace trace = currentTrace.get();
+        if (trace == null)
+            return;
+        trace.spans.add(new Span(name, details, startTime - trace.startTime, System.nanoTime() - startTime));
+    }
+
+    void finish() {
+        currentTrace.remove();
+        long duration = decodeTime + System.nanoTime() - startTime;
+        if (duration < SLOW_TRACE_THRESHOLD)
+            return;
+        Logger.warn("slow {} message from site {} took {} ms, see {}", type, siteID, duration / 1000000, SLOW_TRACE_LOG);
+        String breakdown = toString(duration);
+        executor.submit(() -> {
+            try (Writer writer = Files.newBufferedWriter(SLOW_TRACE_LOG, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(breakdown);
+            } catch (IOException e) {
+                Logger.error(e);
+            }
+        });
+    }
+
+    private static String toMilliseconds(long nanoseconds) {
+        return String.format("%.3f ms", nanoseconds / 1e6);
+    }
+
+    private String toString(long duration) {
+        StringBuilder breakdown = new StringBuilder()
+                .append(Instant.ofEpochMilli(timestamp)).append(' ').append(type).append(" message from site ")
+                .append(siteID).append(" took ").append(toMilliseconds(duration)).append('\n')
+                .append("  decode ").append(toMilliseconds(decodeTime)).append('\n');
+        // spans are recorded when they end, so nested spans precede their enclosing span
+        spans.sort((a, b) -> Long.compare(a.offset, b.offset));
+        for (Span span : spans) {
+            breakdown.append("  +").append(toMilliseconds(span.offset)).append(' ').append(span.name);
+            for (Object detail : span.details)
+                breakdown.append(' ').append(detail);
+            breakdown.append(' ').append(toMilliseconds(span.duration)).append('\n');
+        }
+        return breakdown.toString();
+    }
+}
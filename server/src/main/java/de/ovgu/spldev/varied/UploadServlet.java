@@ -0,0 +1,151 @@
+package de.ovgu.spldev.varied;
+
+import de.ovgu.spldev.varied.messaging.Api;
+import de.ovgu.spldev.varied.util.HashUtils;
+import de.ovgu.spldev.varied.util.StringUtils;
+import org.pmw.tinylog.Logger;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Adds an artifact from a feature model uploaded with, e.g., PUT /upload?project=P&artifact=A&fileName=model.xml.
+ * Unlike ADD_ARTIFACT, the source is not sent as a single message. It is spooled to disk while hashing, then
+ * parsed from the file with the streaming importer. The kernel lock is only held to register the artifact.
+ * Uploads are stored by their content hash, so identical uploads share a file and base feature model.
+ */
+@WebServlet("/upload")
+public class UploadServlet extends HttpServlet {
+    private static final int BUFFER_SIZE = 65536;
+    private static final long MAXIMUM_UPLOAD_SIZE = Long.getLong("variED.maximumUploadSize", 100 * 1024 * 1024);
+    private static final Path UPLOAD_DIRECTORY = Paths.get(System.getProperty("variED.uploadDirectory",
+            Paths.get(System.getProperty("java.io.tmpdir"), "variED-uploads").toString()));
+
+    private static String getExtension(String fileName) {
+        int index = fileName.lastIndexOf('.');
+        return index == -1 ? "xml" : fileName.substring(index + 1).toLowerCase().replaceAll("[^a-z0-9]", "");
+    }
+
+    private static class Upload {
+        Path path;
+        String key;
+        // whether the file was created by this upload, otherwise it is shared with an identical upload
+        boolean isNew;
+
+        Upload(Path path, String hash, boolean isNew) {
+            this.path = path;
+            this.key = FeatureModelStore.getKey(path, hash);
+            this.isNew = isNew;
+        }
+    }
+
+    private static Upload spool(InputStream inputStream, String extension) throws IOException {
+        Files.createDirectories(UPLOAD_DIRECTORY);
+        Path temporaryPath = Files.createTempFile(UPLOAD_DIRECTORY, "upload", ".tmp");
+        try {
+            MessageDigest digest = HashUtils.createDigest();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long size = 0;
+            try (OutputStream outputStream = Files.newOutputStream(temporaryPath)) {
+                for (int length; (length = inputStream.read(buffer)) != -1; ) {
+                    size += length;
+                    if (size > MAXIMUM_UPLOAD_SIZE)
+                        throw new RuntimeException("upload exceeds maximum size of " + MAXIMUM_UPLOAD_SIZE + " bytes");
+                    digest.update(buffer, 0, length);
+                    outputStream.write(buffer, 0, length);
+                }
+            }
+            String hash = HashUtils.toHexString(digest.digest());
+            Path uploadPath = UPLOAD_DIRECTORY.resolve(hash + "." + extension);
+            boolean isNew = !Files.exists(uploadPath);
+            if (isNew)
+                try {
+                    Files.move(temporaryPath, uploadPath, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporaryPath, uploadPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            return new Upload(uploadPath, hash, isNew);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    private static boolean isReferenced(Path uploadPath) {
+        return ProjectManager.getInstance().getArtifacts().stream().anyMatch(artifact ->
+                artifact instanceof Artifact.FeatureModel && uploadPath.equals(((Artifact.FeatureModel) artifact).getSourcePath()));
+    }
+
+    // only called with the kernel lock held, as artifacts are registered under it
+    private static void discard(Upload upload) {
+        // identical uploads that raced may both have created the file, and another one may have registered it
+        if (!upload.isNew || isReferenced(upload.path))
+            return;
+        try {
+            Files.deleteIfExists(upload.path);
+        } catch (IOException e) {
+            Logger.error(e);
+        }
+    }
+
+    protected void doPut(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        String projectName = request.getParameter("project"), artifactName = request.getParameter("artifact"),
+                fileName = request.getParameter("fileName");
+        if (!StringUtils.isPresent(projectName) || !StringUtils.isPresent(artifactName)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "no project or artifact given");
+            return;
+        }
+        Artifact.Path artifactPath = new Artifact.Path(projectName, artifactName);
+        if (ProjectManager.getInstance().getArtifact(artifactPath) != null) {
+            response.sendError(HttpServletResponse.SC_CONFLICT, "artifact for path " + artifactPath + " already exists");
+            return;
+        }
+
+        Upload upload;
+        try {
+            upload = spool(request.getInputStream(), getExtension(fileName != null ? fileName : artifactName + ".xml"));
+        } catch (RuntimeException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        Logger.info("spooled upload for artifact {} to {}", artifactPath, upload.path);
+
+        try {
+            // parses the upload before registering it, so invalid feature models are rejected
+            FeatureModelStore.getInstance().get(upload.path, upload.key);
+        } catch (RuntimeException e) {
+            synchronized (WebSocket.lock) {
+                discard(upload);
+            }
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        synchronized (WebSocket.lock) {
+            try {
+                // an identical upload may have failed and discarded the shared file in the meantime
+                if (!Files.exists(upload.path))
+                    throw new RuntimeException("upload for artifact " + artifactPath + " was discarded, please retry");
+                Project project = ProjectManager.getInstance().getProjectForNewArtifact(artifactPath);
+                project.addArtifact(new Artifact.FeatureModel(project, artifactName, upload.path, upload.key));
+            } catch (RuntimeException e) {
+                discard(upload);
+                response.sendError(HttpServletResponse.SC_CONFLICT, e.getMessage());
+                return;
+            }
+            CollaboratorManager.getInstance().broadcast(new Api.AddArtifact(Arrays.asList(artifactPath),
+                    ProjectManager.getInstance().getArtifactCatalog().getVersion()));
+        }
+        response.setStatus(HttpServletResponse.SC_CREATED);
+        response.getWriter().write(artifactPath.toString());
+    }
+}
@@ -0,0 +1,129 @@
+package de.ovgu.spldev.varied;
+
+import com.google.gson.annotations.Expose;
+import de.ovgu.spldev.varied.kernel.FeatureModelDiff;
+import de.ovgu.spldev.varied.kernel.Kernel;
+import de.ovgu.spldev.varied.kernel.Keywords;
+import de.ovgu.spldev.varied.messaging.Api;
+import de.ovgu.spldev.varied.messaging.Message;
+import de.ovgu.spldev.varied.util.FeatureModelUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Checkpoints of an artifact's past combined effects, which the kernel does not retain itself.
+ * As combined effects are persistent, checkpoints share all unchanged structures with each other
+ * and with the live session. Edits within the checkpoint interval are collapsed into one checkpoint.
+ * Checkpoints are exported on a separate thread, so reading the history does not hold the kernel lock.
+ */
+public class VersionHistory {
+    private static final long CHECKPOINT_INTERVAL = Long.getLong("variED.checkpointInterval", 10000);
+    private static final int MAXIMUM_CHECKPOINTS = Integer.getInteger("variED.maximumCheckpoints", 1000);
+    private static ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "version-history");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static class Checkpoint {
+        @Expose
+        long version;
+
+        @Expose
+        long timestamp;
+
+        transient long openedAt;
+        transient Kernel.Snapshot snapshot;
+
+        Checkpoint(Kernel.Snapshot snapshot, long timestamp) {
+            this.version = snapshot.getVersion();
+            this.timestamp = this.openedAt = timestamp;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+
+    synchronized void record(Kernel.Snapshot snapshot) {
+        // conflict descriptors are not feature models, so they are not recorded
+        if (!snapshot.getCombinedEffect().containsKey(Keywords.FEATURES))
+            return;
+        Checkpoint lastCheckpoint = checkpoints.peekLast();
+        if (lastCheckpoint != null && lastCheckpoint.snapshot == snapshot)
+            return;
+        long timestamp = System.currentTimeMillis();
+        // the initial feature model is never collapsed with later edits
+        if (lastCheckpoint != null && checkpoints.size() > 1 && timestamp - lastCheckpoint.openedAt < CHECKPOINT_INTERVAL) {
+            lastCheckpoint.version = snapshot.getVersion();
+            lastCheckpoint.timestamp = timestamp;
+            lastCheckpoint.snapshot = snapshot;
+            return;
+        }
+        checkpoints.addLast(new Checkpoint(snapshot, timestamp));
+        if (checkpoints.size() > MAXIMUM_CHECKPOINTS)
+            checkpoints.removeFirst();
+    }
+
+    synchronized List<Checkpoint> getCheckpoints() {
+        return new ArrayList<>(checkpoints);
+    }
+
+    /**
+     * Returns the checkpoint with a given version, or else the latest checkpoint recorded at or before a given time.
+     */
+    synchronized Kernel.Snapshot getSnapshot(Long version, Long timestamp) {
+        if (version != null) {
+            for (Checkpoint checkpoint : checkpoints)
+                if (checkpoint.version == version)
+                    return checkpoint.snapshot;
+            throw new RuntimeException("no checkpoint for version " + version);
+        }
+        if (timestamp != null) {
+            Kernel.Snapshot snapshot = null;
+            for (Checkpoint checkpoint : checkpoints)
+                if (checkpoint.timestamp <= timestamp)
+                    snapshot = checkpoint.snapshot;
+            if (snapshot == null)
+                throw new RuntimeException("no checkpoint recorded before " + timestamp);
+            return snapshot;
+        }
+        throw new RuntimeException("no version or timestamp given");
+    }
+
+    FeatureModelDiff diff(Kernel.Snapshot currentSnapshot, Long fromVersion, Long toVersion) {
+        if (fromVersion == null)
+            throw new RuntimeException("no version given");
+        Kernel.Snapshot toSnapshot = toVersion == null ? currentSnapshot : getSnapshot(toVersion, null);
+        return FeatureModelDiff.diff(getSnapshot(fromVersion, null).getCombinedEffect(), toSnapshot.getCombinedEffect());
+    }
+
+    private static void sendAsync(Collaborator collaborator, Kernel.Snapshot snapshot,
+                                  Function<Kernel.Snapshot, Message.IEncodable> messageFunction) {
+        CompletableFuture.supplyAsync(() -> messageFunction.apply(snapshot), executor)
+                .whenComplete((message, throwable) -> {
+                    synchronized (WebSocket.lock) {
+                        collaborator.send(throwable == null ? message : new Api.Error(throwable.getCause()));
+                    }
+                });
+    }
+
+    void export(Collaborator collaborator, Api.ExportArtifact exportArtifactMessage) {
+        Kernel.Snapshot snapshot = getSnapshot(exportArtifactMessage.version, exportArtifactMessage.timestamp);
+        sendAsync(collaborator, snapshot, _snapshot -> {
+            exportArtifactMessage.data = FeatureModelUtils.exportFeatureModel(_snapshot.getCombinedEffect(), exportArtifactMessage.format);
+            return exportArtifactMessage;
+        });
+    }
+
+    void fetch(Collaborator collaborator, Artifact.Path artifactPath, Api.FetchVersion fetchVersionMessage) {
+        Kernel.Snapshot snapshot = getSnapshot(fetchVersionMessage.version, fetchVersionMessage.timestamp);
+        sendAsync(collaborator, snapshot,
+                _snapshot -> new Api.Snapshot(artifactPath, _snapshot.getVersion(), Kernel.encode(_snapshot)));
+    }
+}
@@ -9,6 +9,7 @@ import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
 import java.io.EOFException;
+import java.util.List;
 import java.util.UUID;
 
 @ServerEndpoint(
@@ -21,7 +22,7 @@ public class WebSocket {
 
     // This essentially forces the server to handle only one message at a time.
     // This assumption simplifies multithreaded access to feature models, but limits server performance.
-    private static final Object lock = new Object();
+    static final Object lock = new Object();
 
     @OnOpen
     public void onOpen(@PathParam("siteID") String _siteID, Session session) {
@@ -31,8 +32,11 @@ public class WebSocket {
                 this.session = session;
                 try {
                     UUID siteID = _siteID.equals("initialize") ? null : UUID.fromString(_siteID);
+                    // sites may pass the artifact catalog version they know to only receive changes since then
+                    List<String> catalogVersion = session.getRequestParameterMap().get("catalogVersion");
                     session.setMaxIdleTimeout(0); // this is not always respected by the servlet container!
-                    this.siteID = CollaboratorManager.getInstance().register(this, siteID);
+                    this.siteID = CollaboratorManager.getInstance().register(this, siteID,
+                            catalogVersion == null || catalogVersion.isEmpty() ? null : Long.valueOf(catalogVersion.get(0)));
                 } catch (Throwable t) {
                     send(new Api.Error(t));
                     session.close();
@@ -58,15 +62,24 @@ public class WebSocket {
 
     @OnMessage
     public void onMessage(Message message) {
+        Metrics.getInstance().recordReceivedMessage(message.getTypeEnum());
+        Trace trace = Trace.start(message.getTypeEnum().toString(), siteID);
+        long lockTime = System.nanoTime();
         synchronized (lock) {
+            Trace.span("lock", lockTime);
             try {
+                long startTime = System.nanoTime();
                 try {
                     CollaboratorManager.getInstance().onMessage(siteID, message);
                 } catch (Throwable t) {
                     send(new Api.Error(t));
+                } finally {
+                    Trace.span("collaborator", startTime);
                 }
             } catch (SendException e) {
                 Logger.error(e);
+            } finally {
+                trace.finish();
             }
         }
     }
@@ -0,0 +1,44 @@
+package de.ovgu.spldev.varied.kernel;
+
+import java.util.UUID;
+
+/**
+ * Simulates a client site on the server, which is useful for warming up or benchmarking the kernel.
+ * Like the server's kernel, it switches to its own kernel context for every call.
+ */
+public class ClientSite {
+    private UUID siteID;
+    private Object context = null;
+
+    public ClientSite(UUID siteID, String initialContext) {
+        this.siteID = siteID;
+        callKernelAtomic("clientInitialize", siteID.toString(), initialContext);
+    }
+
+    private Object callKernelAtomic(String function, Object... args) {
+        Kernel.callKernel("setLoggerFunction", (Object) null);
+        Kernel.callKernel("setInternFunction", (Object) null);
+        if (context != null)
+            Kernel.callKernel("setContext", context);
+        Object result = Kernel.callKernel(function, args);
+        context = Kernel.callKernel("getContext");
+        return result;
+    }
+
+    public UUID getSiteID() {
+        return siteID;
+    }
+
+    public String generateCreateFeatureBelow(String parentID) {
+        return (String) ((Object[]) callKernelAtomic("clientGenerateOperation",
+                callKernelAtomic("operationCreateFeatureBelow", parentID)))[1];
+    }
+
+    public String generateHeartbeat() {
+        return (String) callKernelAtomic("clientGenerateHeartbeat");
+    }
+
+    public void receiveMessage(String message) {
+        callKernelAtomic("clientReceiveMessage", message);
+    }
+}
@@ -0,0 +1,181 @@
+package de.ovgu.spldev.varied.kernel;
+
+import clojure.lang.APersistentMap;
+import clojure.lang.Keyword;
+import com.google.gson.annotations.Expose;
+
+import java.util.*;
+
+/**
+ * Structural difference between two feature models in the kernel's representation, matched by IDs.
+ * Only the parts of the feature and constraint maps that are not shared between both feature models
+ * are compared, so the effort is proportional to the changed area (see {@link PersistentMapDiff}).
+ * Removed features are graveyarded, which includes all features below a removed subtree.
+ */
+public class FeatureModelDiff {
+    public static class FeatureMove {
+        @Expose
+        String featureID;
+
+        @Expose
+        String oldParentID;
+
+        @Expose
+        String newParentID;
+
+        FeatureMove(String featureID, Object oldParentID, Object newParentID) {
+            this.featureID = featureID;
+            this.oldParentID = (String) oldParentID;
+            this.newParentID = (String) newParentID;
+        }
+    }
+
+    public static class AttributeChange {
+        @Expose
+        String featureID;
+
+        @Expose
+        String attribute;
+
+        @Expose
+        String oldValue;
+
+        @Expose
+        String newValue;
+
+        AttributeChange(String featureID, Keyword attribute, Object oldValue, Object newValue) {
+            this.featureID = featureID;
+            this.attribute = attribute.getName();
+            this.oldValue = toString(oldValue);
+            this.newValue = toString(newValue);
+        }
+
+        private static String toString(Object value) {
+            return value instanceof Keyword ? ((Keyword) value).getName() : value == null ? null : value.toString();
+        }
+    }
+
+    @Expose
+    private Set<String> addedFeatureIDs = new LinkedHashSet<>();
+
+    @Expose
+    private Set<String> removedFeatureIDs = new LinkedHashSet<>();
+
+    @Expose
+    private List<FeatureMove> movedFeatures = new ArrayList<>();
+
+    @Expose
+    private List<AttributeChange> attributeChanges = new ArrayList<>();
+
+    @Expose
+    private List<String> addedConstraintIDs = new ArrayList<>();
+
+    @Expose
+    private List<String> removedConstraintIDs = new ArrayList<>();
+
+    @Expose
+    private List<String> changedConstraintIDs = new ArrayList<>();
+
+    private APersistentMap oldFeaturesMap, newFeaturesMap, oldChildrenCacheMap, newChildrenCacheMap;
+
+    private FeatureModelDiff(APersistentMap oldCombinedEffect, APersistentMap newCombinedEffect) {
+        this.oldFeaturesMap = getMap(oldCombinedEffect, Keywords.FEATURES);
+        this.newFeaturesMap = getMap(newCombinedEffect, Keywords.FEATURES);
+        this.oldChildrenCacheMap = getMap(oldCombinedEffect, Keywords.CHILDREN_CACHE);
+        this.newChildrenCacheMap = getMap(newCombinedEffect, Keywords.CHILDREN_CACHE);
+    }
+
+    private static APersistentMap getMap(APersistentMap combinedEffect, Keyword keyword) {
+        APersistentMap map = (APersistentMap) combinedEffect.get(keyword);
+        if (map == null)
+            throw new RuntimeException("feature model not available while in conflict");
+        return map;
+    }
+
+    public static FeatureModelDiff diff(APersistentMap oldCombinedEffect, APersistentMap newCombinedEffect) {
+        FeatureModelDiff featureModelDiff = new FeatureModelDiff(oldCombinedEffect, newCombinedEffect);
+        PersistentMapDiff.diff(featureModelDiff.oldFeaturesMap, featureModelDiff.newFeaturesMap,
+                (featureID, oldFeatureMap, newFeatureMap) -> featureModelDiff.diffFeature(
+                        (String) featureID, (APersistentMap) oldFeatureMap, (APersistentMap) newFeatureMap));
+        PersistentMapDiff.diff(
+                getMap(oldCombinedEffect, Keywords.CONSTRAINTS), getMap(newCombinedEffect, Keywords.CONSTRAINTS),
+                (constraintID, oldConstraintMap, newConstraintMap) -> featureModelDiff.diffConstraint(
+                        (String) constraintID, (APersistentMap) oldConstraintMap, (APersistentMap) newConstraintMap));
+        return featureModelDiff;
+    }
+
+    private static boolean isLive(APersistentMap featuresMap, String featureID) {
+        // features are graveyarded explicitly or implicitly, when an ancestor is graveyarded
+        for (int depth = 0; depth <= featuresMap.count(); depth++) {
+            APersistentMap featureMap = (APersistentMap) featuresMap.get(featureID);
+            if (featureMap == null)
+                return false;
+            Object parentID = featureMap.get(Keywords.PARENT_ID);
+            if (parentID == null)
+                return true;
+            if (!(parentID instanceof String))
+                return false;
+            featureID = (String) parentID;
+        }
+        return false;
+    }
+
+    // collects a subtree's features that are live in one feature model, but not in the other
+    private void collectSubtree(String featureID, APersistentMap childrenCacheMap, APersistentMap otherFeaturesMap,
+                                Set<String> featureIDs) {
+        if (isLive(otherFeaturesMap, featureID) || !featureIDs.add(featureID))
+            return;
+        Collection<?> childrenIDs = (Collection<?>) childrenCacheMap.get(featureID);
+        if (childrenIDs != null)
+            for (Object childID : childrenIDs)
+                collectSubtree((String) childID, childrenCacheMap, otherFeaturesMap, featureIDs);
+    }
+
+    private void diffFeature(String featureID, APersistentMap oldFeatureMap, APersistentMap newFeatureMap) {
+        boolean wasLive = oldFeatureMap != null && isLive(oldFeaturesMap, featureID),
+                isLive = newFeatureMap != null && isLive(newFeaturesMap, featureID);
+        if (!wasLive && isLive)
+            collectSubtree(featureID, newChildrenCacheMap, oldFeaturesMap, addedFeatureIDs);
+        else if (wasLive && !isLive)
+            collectSubtree(featureID, oldChildrenCacheMap, newFeaturesMap, removedFeatureIDs);
+        else if (wasLive) {
+            Object oldParentID = oldFeatureMap.get(Keywords.PARENT_ID), newParentID = newFeatureMap.get(Keywords.PARENT_ID);
+            if (!Objects.equals(oldParentID, newParentID))
+                movedFeatures.add(new FeatureMove(featureID, oldParentID, newParentID));
+            Set<Object> attributes = new LinkedHashSet<>(((Map<?, ?>) oldFeatureMap).keySet());
+            attributes.addAll(((Map<?, ?>) newFeatureMap).keySet());
+            for (Object attribute : attributes)
+                if (attribute != Keywords.PARENT_ID &&
+                        !Objects.equals(oldFeatureMap.get(attribute), newFeatureMap.get(attribute)))
+                    attributeChanges.add(new AttributeChange(featureID, (Keyword) attribute,
+                            oldFeatureMap.get(attribute), newFeatureMap.get(attribute)));
+        }
+    }
+
+    private static boolean isActive(APersistentMap constraintMap) {
+        return constraintMap != null && !Boolean.TRUE.equals(constraintMap.get(Keywords.GRAVEYARDED));
+    }
+
+    private void diffConstraint(String constraintID, APersistentMap oldConstraintMap, APersistentMap newConstraintMap) {
+        boolean wasActive = isActive(oldConstraintMap), isActive = isActive(newConstraintMap);
+        if (!wasActive && isActive)
+            addedConstraintIDs.add(constraintID);
+        else if (wasActive && !isActive)
+            removedConstraintIDs.add(constraintID);
+        else if (wasActive && !Objects.equals(oldConstraintMap.get(Keywords.FORMULA), newConstraintMap.get(Keywords.FORMULA)))
+            changedConstraintIDs.add(constraintID);
+    }
+
+    public boolean isEmpty() {
+        return addedFeatureIDs.isEmpty() && removedFeatureIDs.isEmpty() && movedFeatures.isEmpty() &&
+                attributeChanges.isEmpty() && addedConstraintIDs.isEmpty() && removedConstraintIDs.isEmpty() &&
+                changedConstraintIDs.isEmpty();
+    }
+
+    public String toString() {
+        return String.format("%d added, %d removed and %d moved features, %d attribute changes, " +
+                        "%d added, %d removed and %d changed constraints",
+                addedFeatureIDs.size(), removedFeatureIDs.size(), movedFeatures.size(), attributeChanges.size(),
+                addedConstraintIDs.size(), removedConstraintIDs.size(), changedConstraintIDs.size());
+    }
+}
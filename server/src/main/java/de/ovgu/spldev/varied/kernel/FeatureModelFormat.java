@@ -9,8 +9,6 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.NodeList;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -20,105 +18,115 @@ import static de.ovgu.featureide.fm.core.localization.StringTable.NOT;
 
 // adapted from de.ovgu.featureide.fm.core.io.xml.XmlFeatureModelFormat
 public class FeatureModelFormat {
+    /**
+     * Converts a feature model into the kernel's representation in one pass, building the
+     * persistent maps with transients instead of copying intermediate Java collections.
+     */
     public static APersistentMap toKernel(IFeatureModel featureModel) {
-        HashMap<Object, Object> featureModelMap = new HashMap<>(),
-                featuresMap = new HashMap<>(),
-                constraintsMap = new HashMap<>();
-
-        featureModel.getFeatures().forEach(feature -> {
-            final List<IFeature> children = FeatureUtils.convertToFeatureList(feature.getStructure().getChildren());
-
-            final HashMap<Object, Object> featureMap = new HashMap<>();
-            if (children.isEmpty() || feature.getStructure().isAnd())
-                featureMap.put(Kernel.keyword("group-type"), Kernel.keyword("and"));
-            else if (feature.getStructure().isOr())
-                featureMap.put(Kernel.keyword("group-type"), Kernel.keyword("or"));
-            else if (feature.getStructure().isAlternative())
-                featureMap.put(Kernel.keyword("group-type"), Kernel.keyword("alternative"));
+        ITransientMap featuresMap = PersistentHashMap.EMPTY.asTransient(),
+                constraintsMap = PersistentHashMap.EMPTY.asTransient();
+
+        for (IFeature feature : featureModel.getFeatures()) {
+            final IFeatureStructure structure = feature.getStructure();
+            final Keyword groupType;
+            if (!structure.hasChildren() || structure.isAnd())
+                groupType = Keywords.AND;
+            else if (structure.isOr())
+                groupType = Keywords.OR;
+            else if (structure.isAlternative())
+                groupType = Keywords.ALTERNATIVE;
             else
                 throw new RuntimeException("unknown feature type");
 
-            featureMap.put(Kernel.keyword("parent-ID"),
-                    feature.getStructure().getParent() == null ? null : feature.getStructure().getParent().getFeature().getName());
-            featureMap.put(Kernel.keyword("optional?"), !feature.getStructure().isMandatory());
-            featureMap.put(Kernel.keyword("name"), de.ovgu.spldev.varied.util.FeatureUtils.getFeatureName(feature));
-            featureMap.put(Kernel.keyword("hidden?"), feature.getStructure().isHidden());
-            featureMap.put(Kernel.keyword("abstract?"), feature.getStructure().isAbstract());
             final String description = feature.getProperty().getDescription();
-            if ((description != null) && !description.trim().isEmpty()) {
-                featureMap.put(Kernel.keyword("description"), description.replace("\r", ""));
-            } else
-                featureMap.put(Kernel.keyword("description"), null);
-            featuresMap.put(feature.getName(), Kernel.toPersistentMap(featureMap));
-        });
+            featuresMap = featuresMap.assoc(feature.getName(), new PersistentArrayMap(new Object[]{
+                    Keywords.GROUP_TYPE, groupType,
+                    Keywords.PARENT_ID, structure.getParent() == null ? null : structure.getParent().getFeature().getName(),
+                    Keywords.OPTIONAL, !structure.isMandatory(),
+                    Keywords.NAME, de.ovgu.spldev.varied.util.FeatureUtils.getFeatureName(feature),
+                    Keywords.HIDDEN, structure.isHidden(),
+                    Keywords.ABSTRACT, structure.isAbstract(),
+                    Keywords.DESCRIPTION, (description != null) && !description.trim().isEmpty()
+                            ? description.replace("\r", "")
+                            : null
+            }));
+        }
 
         for (final IConstraint constraint : featureModel.getConstraints()) {
-            HashMap<Object, Object> constraintMap = new HashMap<>();
-            ArrayList<Object> formulaList = new ArrayList<>();
-            createConstraint(formulaList, constraint.getNode());
-            if (formulaList.size() != 1)
+            Object formula = createConstraint(constraint.getNode());
+            if (formula == null)
                 throw new RuntimeException("constraint serialization failed");
-            constraintMap.put(Kernel.keyword("formula"), formulaList.get(0));
-            constraintMap.put(Kernel.keyword("graveyarded?"), false);
-            constraintsMap.put(de.ovgu.spldev.varied.util.FeatureUtils.getConstraintID(constraint).toString(),
-                    Kernel.toPersistentMap(constraintMap));
+            constraintsMap = constraintsMap.assoc(de.ovgu.spldev.varied.util.FeatureUtils.getConstraintID(constraint).toString(),
+                    new PersistentArrayMap(new Object[]{
+                            Keywords.FORMULA, formula,
+                            Keywords.GRAVEYARDED, false
+                    }));
         }
 
-        featureModelMap.put(Kernel.keyword("features"), Kernel.toPersistentMap(featuresMap));
-        featureModelMap.put(Kernel.keyword("constraints"), Kernel.toPersistentMap(constraintsMap));
-        return Kernel.toPersistentMap(featureModelMap);
+        return new PersistentArrayMap(new Object[]{
+                Keywords.FEATURES, featuresMap.persistent(),
+                Keywords.CONSTRAINTS, constraintsMap.persistent()
+        });
     }
 
-    private static void createConstraint(ArrayList<Object> formulaList, org.prop4j.Node node) {
+    private static Object createConstraint(org.prop4j.Node node) {
         if (node == null)
-            return;
+            return null;
 
-        final ArrayList<Object> op = new ArrayList<>();
         if (node instanceof Literal) {
             final Literal literal = (Literal) node;
             if (literal.positive)
-                formulaList.add(String.valueOf(literal.var));
-            else {
-                ArrayList<Object> opNot = new ArrayList<>();
-                opNot.add(Kernel.keyword("not"));
-                opNot.add(String.valueOf(literal.var));
-                formulaList.add(Kernel.toPersistentVector(opNot));
-            }
-            return;
-        } else if (node instanceof Or)
-            op.add(Kernel.keyword("disj"));
+                return String.valueOf(literal.var);
+            return PersistentVector.create(Keywords.NOT, String.valueOf(literal.var));
+        }
+
+        final Keyword op;
+        if (node instanceof Or)
+            op = Keywords.DISJ;
         else if (node instanceof Equals)
-            op.add(Kernel.keyword("eq"));
+            op = Keywords.EQ;
         else if (node instanceof Implies)
-            op.add(Kernel.keyword("imp"));
+            op = Keywords.IMP;
         else if (node instanceof And)
-            op.add(Kernel.keyword("conj"));
+            op = Keywords.CONJ;
         else if (node instanceof Not)
-            op.add(Kernel.keyword("not"));
+            op = Keywords.NOT;
         else
             throw new RuntimeException("unknown operator " + node.getClass() + " encountered");
 
-        for (final org.prop4j.Node child : node.getChildren())
-            createConstraint(op, child);
+        ITransientCollection formula = ((ITransientCollection) PersistentVector.EMPTY.asTransient()).conj(op);
+        for (final org.prop4j.Node child : node.getChildren()) {
+            Object childFormula = createConstraint(child);
+            if (childFormula != null)
+                formula = formula.conj(childFormula);
+        }
+        return formula.persistent();
+    }
 
-        formulaList.add(Kernel.toPersistentVector(op));
+    public static APersistentMap getCombinedEffect(Object kernelContext) {
+        try {
+            APersistentMap contextHashMap = (APersistentMap) kernelContext;
+            Atom atom = (Atom) contextHashMap.get(Keywords.COMBINED_EFFECT);
+            return (APersistentMap) atom.deref();
+        } catch (Throwable t) {
+            throw new RuntimeException("feature model not available in kernel context");
+        }
     }
 
     public static IFeatureModel toFeatureModel(Object kernelContext) {
+        return combinedEffectToFeatureModel(getCombinedEffect(kernelContext));
+    }
+
+    public static IFeatureModel combinedEffectToFeatureModel(APersistentMap featureModelHashMap) {
         IFeatureModelFactory featureModelFactory = DefaultFeatureModelFactory.getInstance();
         IFeatureModel featureModel = featureModelFactory.createFeatureModel();
 
         APersistentMap featuresHashMap, constraintsHashMap, childrenCacheHashMap;
-        try {
-            APersistentMap contextHashMap = (APersistentMap) kernelContext;
-            Atom atom = (Atom) contextHashMap.get(Kernel.keyword("combined-effect"));
-            APersistentMap featureModelHashMap = (APersistentMap) atom.deref();
-            featuresHashMap = (APersistentMap) featureModelHashMap.get(Kernel.keyword("features"));
-            constraintsHashMap = (APersistentMap) featureModelHashMap.get(Kernel.keyword("constraints"));
-            childrenCacheHashMap = (APersistentMap) featureModelHashMap.get(Kernel.keyword("children-cache"));
-        } catch (Throwable t) {
+        featuresHashMap = (APersistentMap) featureModelHashMap.get(Keywords.FEATURES);
+        constraintsHashMap = (APersistentMap) featureModelHashMap.get(Keywords.CONSTRAINTS);
+        childrenCacheHashMap = (APersistentMap) featureModelHashMap.get(Keywords.CHILDREN_CACHE);
+        if (featuresHashMap == null || constraintsHashMap == null || childrenCacheHashMap == null)
             throw new RuntimeException("feature model not available in kernel context");
-        }
 
         parseFeatures(featureModelFactory, featureModel, featuresHashMap, childrenCacheHashMap,
                 (APersistentSet) childrenCacheHashMap.get(null), null);
@@ -127,8 +135,8 @@ public class FeatureModelFormat {
             IMapEntry entry = (IMapEntry) e;
             String constraintID = (String) entry.key();
             APersistentMap constraintHashMap = (APersistentMap) entry.val();
-            Object formula = constraintHashMap.get(Kernel.keyword("formula"));
-            boolean graveyarded = (boolean) constraintHashMap.get(Kernel.keyword("graveyarded?"));
+            Object formula = constraintHashMap.get(Keywords.FORMULA);
+            boolean graveyarded = (boolean) constraintHashMap.get(Keywords.GRAVEYARDED);
 
             if (!graveyarded)
                 try {
@@ -149,23 +157,23 @@ public class FeatureModelFormat {
                 throw new RuntimeException("Duplicate entry for feature: " + featureID);
 
             final IFeature feature = featureModelFactory.createFeature(featureModel, featureID);
-            String groupType = ((Keyword) featureHashMap.get(Kernel.keyword("group-type"))).getName();
+            String groupType = ((Keyword) featureHashMap.get(Keywords.GROUP_TYPE)).getName();
             if (groupType.equals("and"))
                 feature.getStructure().setAnd();
             else if (groupType.equals("alternative"))
                 feature.getStructure().setAlternative();
             else if (groupType.equals("or"))
                 feature.getStructure().setOr();
-            Object isOptional = featureHashMap.get(Kernel.keyword("optional?"));
-            Object isAbstract = featureHashMap.get(Kernel.keyword("abstract?"));
-            Object isHidden = featureHashMap.get(Kernel.keyword("hidden?"));
+            Object isOptional = featureHashMap.get(Keywords.OPTIONAL);
+            Object isAbstract = featureHashMap.get(Keywords.ABSTRACT);
+            Object isHidden = featureHashMap.get(Keywords.HIDDEN);
             feature.getStructure().setMandatory(isOptional == null || !((boolean) isOptional));
             feature.getStructure().setAbstract(isAbstract != null && (boolean) isAbstract);
             feature.getStructure().setHidden(isHidden != null && (boolean) isHidden);
-            String description = (String) featureHashMap.get(Kernel.keyword("description"));
+            String description = (String) featureHashMap.get(Keywords.DESCRIPTION);
             if (description != null && !description.trim().isEmpty())
                 feature.getProperty().setDescription(description.replace("\r", ""));
-            de.ovgu.spldev.varied.util.FeatureUtils.setFeatureName(feature, (String) featureHashMap.get(Kernel.keyword("name")));
+            de.ovgu.spldev.varied.util.FeatureUtils.setFeatureName(feature, (String) featureHashMap.get(Keywords.NAME));
 
             featureModel.addFeature(feature);
             if (parent == null)
@@ -0,0 +1,53 @@
+package de.ovgu.spldev.varied.kernel;
+
+import clojure.lang.AFn;
+import clojure.lang.APersistentMap;
+import clojure.lang.IMapEntry;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Canonicalizes feature, constraint, site and version IDs for one kernel session.
+ * Every message the kernel decodes carries fresh copies of the IDs it refers to, which would
+ * otherwise be retained separately in the history buffer, the CDAG and the combined effect.
+ * Only UUID-shaped strings are pooled, and IDs that are no longer referenced are released.
+ * The kernel calls this with one argument (the decoded string).
+ */
+class IdentifierPool extends AFn {
+    private WeakHashMap<String, WeakReference<String>> identifiers = new WeakHashMap<>();
+
+    private static boolean isIdentifier(String str) {
+        return str.length() == 36 && str.charAt(8) == '-' && str.charAt(13) == '-' &&
+                str.charAt(18) == '-' && str.charAt(23) == '-';
+    }
+
+    synchronized String intern(String str) {
+        if (str == null || !isIdentifier(str))
+            return str;
+        WeakReference<String> reference = identifiers.get(str);
+        String identifier = reference == null ? null : reference.get();
+        if (identifier != null)
+            return identifier;
+        identifiers.put(str, new WeakReference<>(str));
+        return str;
+    }
+
+    void addFeatureModel(APersistentMap featureModel) {
+        for (Object key : new Object[]{Keywords.FEATURES, Keywords.CONSTRAINTS}) {
+            APersistentMap map = (APersistentMap) featureModel.get(key);
+            if (map != null)
+                for (Object e : map)
+                    intern((String) ((IMapEntry) e).key());
+        }
+    }
+
+    synchronized int size() {
+        return identifiers.size();
+    }
+
+    @Override
+    public Object invoke(Object str) {
+        return intern((String) str);
+    }
+}
@@ -0,0 +1,382 @@
+package de.ovgu.spldev.varied.kernel;
+
+import clojure.lang.*;
+import org.prop4j.*;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Incremental SAT analysis of a session's feature model for validity and dead features, used by the
+ * analysis service. Successive versions of a feature model differ in only a few features and constraints,
+ * so there is one incremental solver per session, and before each analysis only the clauses of changed
+ * feature groups and constraints are replaced. Configurations found for the previous version are reused,
+ * so usually only few features need to be checked with the solver. Results only depend on the analyzed
+ * feature model. Unit clauses are passed as assumptions, because sat4j can not remove them.
+ */
+public class IncrementalAnalyzer {
+    private static final int TIMEOUT = 10;
+
+    private static class Clauses {
+        Object[] dependencies;
+        ArrayList<IConstr> constraints = new ArrayList<>();
+        ArrayList<int[]> clauses = new ArrayList<>();
+        ArrayList<Integer> units = new ArrayList<>();
+    }
+
+    private ISolver solver = SolverFactory.newDefault();
+    private HashMap<String, Integer> variables = new HashMap<>();
+    // clauses for every live feature and its children, and for every constraint
+    private HashMap<String, Clauses> groupClauses = new HashMap<>(), constraintClauses = new HashMap<>();
+    private Object encodedFeatureModel;
+    private ArrayList<String> liveFeatures = new ArrayList<>();
+    private Analysis previousAnalysis;
+
+    public IncrementalAnalyzer() {
+        solver.setTimeout(TIMEOUT);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("variED.incrementalAnalysis", "false"));
+    }
+
+    /**
+     * Result of analyzing a feature model. Besides the dead features, this includes configurations
+     * that witness all other features being alive, which can be reused when analyzing similar feature
+     * models: a configuration that satisfies all clauses that have changed remains valid.
+     */
+    public static class Analysis {
+        private HashMap<String, Clauses> groupClauses, constraintClauses;
+        private ArrayList<BitSet> configurations = new ArrayList<>();
+        private List<String> deadFeatureIDs = new ArrayList<>();
+        private boolean isVoid = false;
+
+        public boolean isVoid() {
+            return isVoid;
+        }
+
+        public List<String> getDeadFeatureIDs() {
+            return deadFeatureIDs;
+        }
+    }
+
+    /**
+     * Analyzes a feature model in the kernel's representation. Returns null if it is a conflict descriptor
+     * or the analysis has been cancelled. Throws if the solver times out, then there is no result at all.
+     */
+    public synchronized Analysis analyze(APersistentMap featureModel, BooleanSupplier isCancelled) throws TimeoutException {
+        if (!encode(featureModel))
+            return null;
+        Analysis analysis = analyze(previousAnalysis, isCancelled);
+        if (analysis != null)
+            previousAnalysis = analysis;
+        return analysis;
+    }
+
+    private static boolean isSatisfied(BitSet configuration, Clauses clauses) {
+        for (int unit : clauses.units)
+            if (configuration.get(Math.abs(unit)) != unit > 0)
+                return false;
+        outer:
+        for (int[] clause : clauses.clauses) {
+            for (int literal : clause)
+                if (configuration.get(Math.abs(literal)) == literal > 0)
+                    continue outer;
+            return false;
+        }
+        return true;
+    }
+
+    private static void addChangedClauses(ArrayList<Clauses> changedClauses,
+                                          HashMap<String, Clauses> clausesMap, HashMap<String, Clauses> previousClausesMap) {
+        for (Map.Entry<String, Clauses> entry : clausesMap.entrySet())
+            if (previousClausesMap == null || previousClausesMap.get(entry.getKey()) != entry.getValue())
+                changedClauses.add(entry.getValue());
+    }
+
+    // removed clauses only relax the feature model, so configurations need only satisfy the changed clauses
+    private ArrayList<BitSet> getValidConfigurations(Analysis previousAnalysis) {
+        ArrayList<BitSet> validConfigurations = new ArrayList<>();
+        if (previousAnalysis == null)
+            return validConfigurations;
+        ArrayList<Clauses> changedClauses = new ArrayList<>();
+        addChangedClauses(changedClauses, groupClauses, previousAnalysis.groupClauses);
+        addChangedClauses(changedClauses, constraintClauses, previousAnalysis.constraintClauses);
+        outer:
+        for (BitSet configuration : previousAnalysis.configurations) {
+            for (Clauses clauses : changedClauses)
+                if (!isSatisfied(configuration, clauses))
+                    continue outer;
+            validConfigurations.add(configuration);
+        }
+        return validConfigurations;
+    }
+
+    private Analysis analyze(Analysis previousAnalysis, BooleanSupplier isCancelled) throws TimeoutException {
+        Analysis analysis = new Analysis();
+        analysis.groupClauses = new HashMap<>(groupClauses);
+        analysis.constraintClauses = new HashMap<>(constraintClauses);
+        analysis.configurations = getValidConfigurations(previousAnalysis);
+        IVecInt assumptions = getAssumptions();
+        if (analysis.configurations.isEmpty()) {
+            int[] model = solver.findModel(assumptions);
+            if (model == null) {
+                analysis.isVoid = true;
+                analysis.deadFeatureIDs.addAll(liveFeatures);
+                return analysis;
+            }
+            analysis.configurations.add(toConfiguration(model));
+        }
+
+        // every feature that is selected in some configuration is not dead
+        BitSet selectedVariables = new BitSet();
+        for (BitSet configuration : analysis.configurations)
+            selectedVariables.or(configuration);
+        for (String featureID : liveFeatures) {
+            int variable = variables.get(featureID);
+            if (selectedVariables.get(variable))
+                continue;
+            if (isCancelled.getAsBoolean())
+                return null;
+            assumptions.push(variable);
+            int[] model = solver.findModel(assumptions);
+            assumptions.pop();
+            if (model != null) {
+                BitSet configuration = toConfiguration(model);
+                analysis.configurations.add(configuration);
+                selectedVariables.or(configuration);
+            } else
+                analysis.deadFeatureIDs.add(featureID);
+        }
+        return analysis;
+    }
+
+    private static BitSet toConfiguration(int[] model) {
+        BitSet configuration = new BitSet();
+        for (int literal : model)
+            if (literal > 0)
+                configuration.set(literal);
+        return configuration;
+    }
+
+    private int getVariable(String featureID) {
+        Integer variable = variables.get(featureID);
+        if (variable == null) {
+            variables.put(featureID, variable = variables.size() + 1);
+            solver.newVar(variable);
+        }
+        return variable;
+    }
+
+    private IVecInt getAssumptions() {
+        IVecInt assumptions = new VecInt();
+        for (Clauses clauses : groupClauses.values())
+            for (int unit : clauses.units)
+                assumptions.push(unit);
+        for (Clauses clauses : constraintClauses.values())
+            for (int unit : clauses.units)
+                assumptions.push(unit);
+        return assumptions;
+    }
+
+    private static boolean isUnchanged(Clauses clauses, Object[] dependencies) {
+        if (clauses == null || clauses.dependencies.length != dependencies.length)
+            return false;
+        for (int i = 0; i < dependencies.length; i++)
+            if (clauses.dependencies[i] != dependencies[i])
+                return false;
+        return true;
+    }
+
+    private void removeClauses(Clauses clauses) {
+        if (clauses != null)
+            for (IConstr constraint : clauses.constraints)
+                solver.removeConstr(constraint);
+    }
+
+    private void addClause(Clauses clauses, int... literals) {
+        if (literals.length == 1) {
+            clauses.units.add(literals[0]);
+            return;
+        }
+        clauses.clauses.add(literals);
+        try {
+            // the solver may reorder the literals, which are also kept for checking configurations
+            IConstr constraint = solver.addClause(new VecInt(literals.clone()));
+            // tautologies and satisfied clauses are not stored by the solver
+            if (constraint != null)
+                clauses.constraints.add(constraint);
+        } catch (ContradictionException e) {
+            throw new RuntimeException("could not add clause to solver");
+        }
+    }
+
+    /**
+     * Updates the solver's clauses to represent the given feature model.
+     * Returns false if the given combined effect is not a feature model (i.e., a conflict descriptor).
+     */
+    private boolean encode(APersistentMap featureModel) {
+        if (featureModel == null || !featureModel.containsKey(Keywords.FEATURES))
+            return false;
+        if (featureModel == encodedFeatureModel)
+            return true;
+        APersistentMap featuresMap = (APersistentMap) featureModel.get(Keywords.FEATURES),
+                constraintsMap = (APersistentMap) featureModel.get(Keywords.CONSTRAINTS),
+                childrenCacheMap = (APersistentMap) featureModel.get(Keywords.CHILDREN_CACHE);
+
+        // features that are reachable from the root, other features are graveyarded
+        liveFeatures.clear();
+        HashSet<String> visitedFeatures = new HashSet<>();
+        ArrayDeque<Object> parentIDs = new ArrayDeque<>();
+        APersistentSet rootIDs = (APersistentSet) childrenCacheMap.get(null);
+        if (rootIDs != null)
+            for (Object rootID : rootIDs) {
+                encodeGroup(featuresMap, childrenCacheMap, (String) rootID, true, visitedFeatures);
+                parentIDs.add(rootID);
+            }
+        while (!parentIDs.isEmpty()) {
+            APersistentSet children = (APersistentSet) childrenCacheMap.get(parentIDs.remove());
+            if (children != null)
+                for (Object childID : children) {
+                    encodeGroup(featuresMap, childrenCacheMap, (String) childID, false, visitedFeatures);
+                    parentIDs.add(childID);
+                }
+        }
+        groupClauses.entrySet().removeIf(entry -> {
+            if (visitedFeatures.contains(entry.getKey()))
+                return false;
+            removeClauses(entry.getValue());
+            return true;
+        });
+
+        HashSet<String> visitedConstraints = new HashSet<>();
+        for (Object e : constraintsMap) {
+            IMapEntry entry = (IMapEntry) e;
+            String constraintID = (String) entry.key();
+            APersistentMap constraintMap = (APersistentMap) entry.val();
+            Object formula = constraintMap.get(Keywords.FORMULA);
+            boolean isActive = !Boolean.TRUE.equals(constraintMap.get(Keywords.GRAVEYARDED)) &&
+                    isLiveFormula(formula, visitedFeatures);
+            if (!isActive)
+                continue;
+            visitedConstraints.add(constraintID);
+            Object[] dependencies = new Object[]{constraintMap};
+            Clauses clauses = constraintClauses.get(constraintID);
+            if (isUnchanged(clauses, dependencies))
+                continue;
+            removeClauses(clauses);
+            clauses = new Clauses();
+            clauses.dependencies = dependencies;
+            encodeFormula(clauses, formula);
+            constraintClauses.put(constraintID, clauses);
+        }
+        constraintClauses.entrySet().removeIf(entry -> {
+            if (visitedConstraints.contains(entry.getKey()))
+                return false;
+            removeClauses(entry.getValue());
+            return true;
+        });
+
+        encodedFeatureModel = featureModel;
+        return true;
+    }
+
+    private void encodeGroup(APersistentMap featuresMap, APersistentMap childrenCacheMap, String featureID,
+                             boolean isRoot, HashSet<String> visitedFeatures) {
+        liveFeatures.add(featureID);
+        visitedFeatures.add(featureID);
+        APersistentSet children = (APersistentSet) childrenCacheMap.get(featureID);
+        int childrenCount = children == null ? 0 : children.count();
+        Object[] dependencies = new Object[childrenCount + 3];
+        dependencies[0] = featuresMap.get(featureID);
+        dependencies[1] = children;
+        dependencies[2] = isRoot;
+        int i = 3;
+        if (children != null)
+            for (Object childID : children)
+                dependencies[i++] = featuresMap.get(childID);
+        Clauses clauses = groupClauses.get(featureID);
+        if (isUnchanged(clauses, dependencies))
+            return;
+
+        removeClauses(clauses);
+        clauses = new Clauses();
+        clauses.dependencies = dependencies;
+        int variable = getVariable(featureID);
+        if (isRoot)
+            addClause(clauses, variable);
+        if (children != null) {
+            Keyword groupType = (Keyword) ((APersistentMap) dependencies[0]).get(Keywords.GROUP_TYPE);
+            int[] childVariables = new int[childrenCount + 1];
+            childVariables[0] = -variable;
+            i = 1;
+            for (Object childID : children) {
+                int childVariable = getVariable((String) childID);
+                childVariables[i++] = childVariable;
+                addClause(clauses, -childVariable, variable);
+                if (groupType == Keywords.AND &&
+                        !Boolean.TRUE.equals(((APersistentMap) featuresMap.get(childID)).get(Keywords.OPTIONAL)))
+                    addClause(clauses, -variable, childVariable);
+            }
+            if (groupType == Keywords.OR || groupType == Keywords.ALTERNATIVE)
+                addClause(clauses, childVariables);
+            if (groupType == Keywords.ALTERNATIVE)
+                for (int j = 1; j < childVariables.length; j++)
+                    for (int k = j + 1; k < childVariables.length; k++)
+                        addClause(clauses, -childVariables[j], -childVariables[k]);
+        }
+        groupClauses.put(featureID, clauses);
+    }
+
+    private static boolean isLiveFormula(Object formula, Set<String> liveFeatures) {
+        if (formula instanceof String)
+            return liveFeatures.contains(formula);
+        APersistentVector formulaVector = (APersistentVector) formula;
+        for (int i = 1; i < formulaVector.count(); i++)
+            if (!isLiveFormula(formulaVector.nth(i), liveFeatures))
+                return false;
+        return true;
+    }
+
+    private static Node toNode(Object formula) {
+        if (formula instanceof String)
+            return new Literal(formula);
+        APersistentVector formulaVector = (APersistentVector) formula;
+        Keyword op = (Keyword) formulaVector.nth(0);
+        Node[] children = new Node[formulaVector.count() - 1];
+        for (int i = 1; i < formulaVector.count(); i++)
+            children[i - 1] = toNode(formulaVector.nth(i));
+        if (op == Keywords.NOT)
+            return new Not(children[0]);
+        if (op == Keywords.DISJ)
+            return new Or(children);
+        if (op == Keywords.CONJ)
+            return new And(children);
+        if (op == Keywords.IMP)
+            return new Implies(children[0], children[1]);
+        if (op == Keywords.EQ)
+            return new Equals(children[0], children[1]);
+        throw new RuntimeException("unknown operator " + op + " encountered");
+    }
+
+    private void encodeFormula(Clauses clauses, Object formula) {
+        Node cnf = toNode(formula).toRegularCNF();
+        for (Node clause : cnf instanceof And ? cnf.getChildren() : new Node[]{cnf}) {
+            Node[] literals = clause instanceof Literal ? new Node[]{clause} : clause.getChildren();
+            int[] clauseLiterals = new int[literals.length];
+            for (int i = 0; i < literals.length; i++) {
+                Literal literal = (Literal) literals[i];
+                int variable = getVariable((String) literal.var);
+                clauseLiterals[i] = literal.positive ? variable : -variable;
+            }
+            addClause(clauses, clauseLiterals);
+        }
+    }
+}
@@ -4,41 +4,62 @@ import clojure.java.api.Clojure;
 import clojure.lang.*;
 import de.ovgu.featureide.fm.core.base.IFeatureModel;
 import de.ovgu.spldev.varied.Artifact;
+import de.ovgu.spldev.varied.Metrics;
+import de.ovgu.spldev.varied.Trace;
 import org.pmw.tinylog.Logger;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.UUID;
 
 public class Kernel {
     private static String KERNEL_NAMESPACE = "kernel.api";
     private Artifact.Path artifactPath;
     private Object context = null;
+    private IdentifierPool identifierPool = new IdentifierPool();
+    private KernelLogger logger;
+    private volatile Snapshot snapshot = null;
 
     static {
+        long startTime = System.currentTimeMillis();
         Logger.info("booting up kernel");
         Clojure.var("clojure.core", "require").invoke(Clojure.read(KERNEL_NAMESPACE));
+        Logger.info("booted up kernel in {} ms", System.currentTimeMillis() - startTime);
     }
 
-    static class CallException extends RuntimeException {
-        CallException(Throwable cause) {
-            super(cause);
-        }
+    /**
+     * Loads the kernel eagerly, which is otherwise done on first use.
+     */
+    public static void boot() {
     }
 
-    static Object keyword(String keywordString) {
-        return Clojure.read(":" + keywordString);
-    }
+    /**
+     * The combined effect after some kernel call, together with a version that is incremented
+     * whenever the combined effect changes. Snapshots may be read without holding the kernel lock.
+     */
+    public static class Snapshot {
+        private long version;
+        private APersistentMap combinedEffect;
+
+        Snapshot(long version, APersistentMap combinedEffect) {
+            this.version = version;
+            this.combinedEffect = combinedEffect;
+        }
 
-    static APersistentMap toPersistentMap(HashMap hashMap) {
-        return (APersistentMap) Clojure.var("clojure.core", "into").invoke(PersistentHashMap.EMPTY, hashMap);
+        public long getVersion() {
+            return version;
+        }
+
+        public APersistentMap getCombinedEffect() {
+            return combinedEffect;
+        }
     }
 
-    static PersistentVector toPersistentVector(ArrayList arrayList) {
-        return (PersistentVector) Clojure.var("clojure.core", "into").invoke(PersistentVector.EMPTY, arrayList);
+    static class CallException extends RuntimeException {
+        CallException(Throwable cause) {
+            super(cause);
+        }
     }
 
-    private Object callKernel(String function, Object... args) {
+    static Object callKernel(String function, Object... args) {
         IFn fn = Clojure.var(KERNEL_NAMESPACE, function);
 
         // ugly, but reflection is impossible (?) as invoke has no "..." overload
@@ -60,32 +81,73 @@ public class Kernel {
         throw new RuntimeException("too many arguments for kernel call");
     }
 
+    private KernelLogger getLogger() {
+        return logger == null ? logger = new KernelLogger(artifactPath) : logger;
+    }
+
     private void callPrepare() {
-        callKernel("setLoggerFunction", new KernelLogger(artifactPath));
+        // without a logger function, the kernel does not build its log lines at all
+        callKernel("setLoggerFunction", KernelLogger.isEnabled() ? getLogger() : null);
+        callKernel("setInternFunction", identifierPool);
         callKernel("setContext", context);
     }
 
     private void callDone() {
         this.context = callKernel("getContext");
+        // persistent data structures are only replaced when modified, so comparing identities suffices
+        APersistentMap combinedEffect = FeatureModelFormat.getCombinedEffect(context);
+        if (snapshot == null || snapshot.combinedEffect != combinedEffect)
+            snapshot = new Snapshot(snapshot == null ? 0 : snapshot.version + 1, combinedEffect);
         callKernel("logProfile");
     }
 
     private Object callKernelAtomic(String function, Object... args) {
+        long startTime = System.nanoTime();
         callPrepare();
         Object result = callKernel(function, args);
         callDone();
+        Metrics.getInstance().recordKernelCall(function, System.nanoTime() - startTime);
+        Trace.span("kernel", startTime, function);
         return result;
     }
 
     public Kernel(Artifact.Path artifactPath, IFeatureModel initialFeatureModel) {
+        this(artifactPath, FeatureModelFormat.toKernel(initialFeatureModel));
+    }
+
+    public Kernel(Artifact.Path artifactPath, APersistentMap initialFeatureModel) {
         this.artifactPath = artifactPath;
-        callKernelAtomic("serverInitialize", FeatureModelFormat.toKernel(initialFeatureModel));
+        // operations decoded later then share the initial feature model's IDs,
+        // forks skip this so they can be initialized in constant time
+        if (!initialFeatureModel.containsKey(Keywords.CHILDREN_CACHE))
+            identifierPool.addFeatureModel(initialFeatureModel);
+        callKernelAtomic("serverInitialize", initialFeatureModel);
     }
 
     public IFeatureModel toFeatureModel() {
         return FeatureModelFormat.toFeatureModel(context);
     }
 
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public APersistentMap getCombinedEffect() {
+        return snapshot.combinedEffect;
+    }
+
+    public long getVersion() {
+        return snapshot.version;
+    }
+
+    /**
+     * Returns the number of operations the kernel currently retains in its history buffer.
+     */
+    public int getHistoryBufferSize() {
+        Atom historyBuffer = (Atom) ((APersistentMap) context).get(Keywords.HISTORY_BUFFER);
+        return historyBuffer == null ? 0 : RT.count(historyBuffer.deref());
+    }
+
     public String generateHeartbeat() {
         return (String) callKernelAtomic("serverGenerateHeartbeat");
     }
@@ -95,15 +157,29 @@ public class Kernel {
     }
 
     public String[] siteJoined(UUID siteID) {
-        return (String[]) callKernelAtomic("serverSiteJoined", siteID.toString());
+        return (String[]) callKernelAtomic("serverSiteJoined", identifierPool.intern(siteID.toString()));
     }
 
     public Object[] siteLeft(UUID siteID) {
-        return (Object[]) callKernelAtomic("serverSiteLeft", siteID.toString());
+        return (Object[]) callKernelAtomic("serverSiteLeft", identifierPool.intern(siteID.toString()));
     }
 
     public void resolveConflict(String versionID) {
-        callKernelAtomic("serverResolveConflict", versionID);
+        callKernelAtomic("serverResolveConflict", identifierPool.intern(versionID));
+    }
+
+    /**
+     * Encodes a snapshot's combined effect for spectators, which receive snapshots instead of operations.
+     */
+    public static String encode(Snapshot snapshot) {
+        return (String) callKernel("serverEncode", snapshot.combinedEffect);
+    }
+
+    /**
+     * Decodes a combined effect encoded with {@link #encode(Snapshot)}, e.g., to initialize a kernel from it.
+     */
+    public static APersistentMap decode(String encodedCombinedEffect) {
+        return (APersistentMap) callKernel("serverDecode", encodedCombinedEffect);
     }
 
     public void GC() {
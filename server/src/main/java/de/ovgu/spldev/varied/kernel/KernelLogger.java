@@ -3,6 +3,7 @@ package de.ovgu.spldev.varied.kernel;
 import clojure.lang.IFn;
 import clojure.lang.ISeq;
 import de.ovgu.spldev.varied.Artifact;
+import org.pmw.tinylog.Level;
 import org.pmw.tinylog.Logger;
 
 /**
@@ -15,6 +16,10 @@ class KernelLogger implements IFn {
         this.artifactPath = artifactPath;
     }
 
+    static boolean isEnabled() {
+        return Logger.getLevel(KernelLogger.class) == Level.TRACE;
+    }
+
     @Override
     public Object invoke() {
         return null;
@@ -22,7 +27,7 @@ class KernelLogger implements IFn {
 
     @Override
     public Object invoke(Object str) {
-        Logger.trace("KERNEL [" + artifactPath + "] " + str);
+        Logger.trace("KERNEL [{}] {}", artifactPath, str);
         return null;
     }
 
@@ -0,0 +1,32 @@
+package de.ovgu.spldev.varied.kernel;
+
+import clojure.lang.Keyword;
+
+/**
+ * Keywords of the kernel's feature model representation, interned once instead of on every use.
+ */
+public class Keywords {
+    public static final Keyword COMBINED_EFFECT = Keyword.intern("combined-effect");
+    public static final Keyword HISTORY_BUFFER = Keyword.intern("HB");
+    public static final Keyword FEATURES = Keyword.intern("features");
+    public static final Keyword CONSTRAINTS = Keyword.intern("constraints");
+    public static final Keyword CHILDREN_CACHE = Keyword.intern("children-cache");
+    public static final Keyword PARENT_ID = Keyword.intern("parent-ID");
+    public static final Keyword GROUP_TYPE = Keyword.intern("group-type");
+    public static final Keyword OPTIONAL = Keyword.intern("optional?");
+    public static final Keyword NAME = Keyword.intern("name");
+    public static final Keyword HIDDEN = Keyword.intern("hidden?");
+    public static final Keyword ABSTRACT = Keyword.intern("abstract?");
+    public static final Keyword DESCRIPTION = Keyword.intern("description");
+    public static final Keyword FORMULA = Keyword.intern("formula");
+    public static final Keyword GRAVEYARDED = Keyword.intern("graveyarded?");
+    public static final Keyword GRAVEYARD = Keyword.intern("graveyard");
+    public static final Keyword AND = Keyword.intern("and");
+    public static final Keyword OR = Keyword.intern("or");
+    public static final Keyword ALTERNATIVE = Keyword.intern("alternative");
+    public static final Keyword NOT = Keyword.intern("not");
+    public static final Keyword DISJ = Keyword.intern("disj");
+    public static final Keyword CONJ = Keyword.intern("conj");
+    public static final Keyword EQ = Keyword.intern("eq");
+    public static final Keyword IMP = Keyword.intern("imp");
+}
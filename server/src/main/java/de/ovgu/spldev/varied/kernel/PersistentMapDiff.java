@@ -0,0 +1,175 @@
+package de.ovgu.spldev.varied.kernel;
+
+import clojure.lang.PersistentHashMap;
+import org.pmw.tinylog.Logger;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes the differences between two versions of a persistent map, comparing values by identity.
+ * Persistent hash maps are hash tries that share all unchanged subtrees with their previous versions.
+ * Identical subtrees are skipped, so the effort is proportional to the changed area, not the map's size.
+ * The trie is accessed through Clojure's internal node classes. Other maps (e.g., small array maps)
+ * are compared entry by entry.
+ */
+public class PersistentMapDiff {
+    public interface Handler {
+        // old or new value is null for added or removed keys
+        void onDifference(Object key, Object oldValue, Object newValue);
+    }
+
+    private static final int BITS = 5, WIDTH = 1 << BITS;
+    private static Class<?> nodeClass, bitmapIndexedNodeClass, arrayNodeClass;
+    private static Field rootField, hasNullField, nullValueField, bitmapField, bitmapIndexedNodeArrayField,
+            arrayNodeArrayField, hashCollisionNodeArrayField;
+
+    static {
+        try {
+            nodeClass = Class.forName("clojure.lang.PersistentHashMap$INode");
+            bitmapIndexedNodeClass = Class.forName("clojure.lang.PersistentHashMap$BitmapIndexedNode");
+            arrayNodeClass = Class.forName("clojure.lang.PersistentHashMap$ArrayNode");
+            rootField = getField(PersistentHashMap.class, "root");
+            hasNullField = getField(PersistentHashMap.class, "hasNull");
+            nullValueField = getField(PersistentHashMap.class, "nullValue");
+            bitmapField = getField(bitmapIndexedNodeClass, "bitmap");
+            bitmapIndexedNodeArrayField = getField(bitmapIndexedNodeClass, "array");
+            arrayNodeArrayField = getField(arrayNodeClass, "array");
+            hashCollisionNodeArrayField = getField(Class.forName("clojure.lang.PersistentHashMap$HashCollisionNode"), "array");
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Logger.warn("can not access persistent hash map nodes, comparing maps entry by entry");
+            rootField = null;
+        }
+    }
+
+    private static Field getField(Class<?> klass, String name) throws NoSuchFieldException {
+        Field field = klass.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    private final Handler handler;
+
+    private PersistentMapDiff(Handler handler) {
+        this.handler = handler;
+    }
+
+    public static void diff(Map<?, ?> oldMap, Map<?, ?> newMap, Handler handler) {
+        if (oldMap == newMap)
+            return;
+        PersistentMapDiff persistentMapDiff = new PersistentMapDiff(handler);
+        try {
+            if (rootField != null && oldMap instanceof PersistentHashMap && newMap instanceof PersistentHashMap) {
+                persistentMapDiff.diffNullKeys((PersistentHashMap) oldMap, (PersistentHashMap) newMap);
+                persistentMapDiff.diffNodes(rootField.get(oldMap), rootField.get(newMap));
+                return;
+            }
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("can not access persistent hash map");
+        }
+        persistentMapDiff.diffEntries(oldMap, newMap);
+    }
+
+    private void diffEntries(Map<?, ?> oldMap, Map<?, ?> newMap) {
+        for (Map.Entry<?, ?> entry : oldMap.entrySet()) {
+            Object newValue = newMap.get(entry.getKey());
+            if (newValue == null && !newMap.containsKey(entry.getKey()))
+                handler.onDifference(entry.getKey(), entry.getValue(), null);
+            else if (newValue != entry.getValue())
+                handler.onDifference(entry.getKey(), entry.getValue(), newValue);
+        }
+        for (Map.Entry<?, ?> entry : newMap.entrySet())
+            if (!oldMap.containsKey(entry.getKey()))
+                handler.onDifference(entry.getKey(), null, entry.getValue());
+    }
+
+    private void diffNullKeys(PersistentHashMap oldMap, PersistentHashMap newMap) throws IllegalAccessException {
+        boolean oldHasNull = hasNullField.getBoolean(oldMap), newHasNull = hasNullField.getBoolean(newMap);
+        Object oldValue = oldHasNull ? nullValueField.get(oldMap) : null,
+                newValue = newHasNull ? nullValueField.get(newMap) : null;
+        if (oldHasNull != newHasNull || oldValue != newValue)
+            handler.onDifference(null, oldValue, newValue);
+    }
+
+    private void diffNodes(Object oldNode, Object newNode) throws IllegalAccessException {
+        if (oldNode == newNode)
+            return;
+        // collisions are rare, so they are compared entry by entry
+        if (oldNode == null || newNode == null || !hasSlots(oldNode) || !hasSlots(newNode)) {
+            diffEntries(collectEntries(oldNode), collectEntries(newNode));
+            return;
+        }
+        for (int i = 0; i < WIDTH; i++) {
+            Object oldKey = getSlotKey(oldNode, i), oldValue = getSlotValue(oldNode, i),
+                    newKey = getSlotKey(newNode, i), newValue = getSlotValue(newNode, i);
+            if (oldValue == newValue && oldKey == newKey)
+                continue;
+            boolean isOldSubtree = oldKey == null && oldValue != null,
+                    isNewSubtree = newKey == null && newValue != null;
+            if (isOldSubtree && isNewSubtree)
+                diffNodes(oldValue, newValue);
+            else if (!isOldSubtree && !isNewSubtree && oldKey != null && oldKey.equals(newKey)) {
+                if (oldValue != newValue)
+                    handler.onDifference(oldKey, oldValue, newValue);
+            } else {
+                // a slot changed between a single entry and a subtree, which is small in this case
+                Map<Object, Object> oldEntries = new HashMap<>(), newEntries = new HashMap<>();
+                collectSlot(oldKey, oldValue, oldEntries);
+                collectSlot(newKey, newValue, newEntries);
+                diffEntries(oldEntries, newEntries);
+            }
+        }
+    }
+
+    private static boolean hasSlots(Object node) {
+        return bitmapIndexedNodeClass.isInstance(node) || arrayNodeClass.isInstance(node);
+    }
+
+    private static int getBitmapIndex(Object node, int i) throws IllegalAccessException {
+        int bitmap = bitmapField.getInt(node), bit = 1 << i;
+        return (bitmap & bit) == 0 ? -1 : Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    // returns null for empty slots and slots that hold a subtree
+    private static Object getSlotKey(Object node, int i) throws IllegalAccessException {
+        if (arrayNodeClass.isInstance(node))
+            return null;
+        int index = getBitmapIndex(node, i);
+        return index == -1 ? null : ((Object[]) bitmapIndexedNodeArrayField.get(node))[2 * index];
+    }
+
+    // returns the entry's value, the subtree, or null for empty slots
+    private static Object getSlotValue(Object node, int i) throws IllegalAccessException {
+        if (arrayNodeClass.isInstance(node))
+            return ((Object[]) arrayNodeArrayField.get(node))[i];
+        int index = getBitmapIndex(node, i);
+        return index == -1 ? null : ((Object[]) bitmapIndexedNodeArrayField.get(node))[2 * index + 1];
+    }
+
+    private static void collectSlot(Object key, Object value, Map<Object, Object> entries) throws IllegalAccessException {
+        if (key != null)
+            entries.put(key, value);
+        else if (value != null)
+            collectEntries(value, entries);
+    }
+
+    private static Map<Object, Object> collectEntries(Object node) throws IllegalAccessException {
+        Map<Object, Object> entries = new HashMap<>();
+        if (node != null)
+            collectEntries(node, entries);
+        return entries;
+    }
+
+    private static void collectEntries(Object node, Map<Object, Object> entries) throws IllegalAccessException {
+        if (hasSlots(node))
+            for (int i = 0; i < WIDTH; i++)
+                collectSlot(getSlotKey(node, i), getSlotValue(node, i), entries);
+        else if (nodeClass.isInstance(node)) {
+            Object[] array = (Object[]) hashCollisionNodeArrayField.get(node);
+            for (int i = 0; i + 1 < array.length; i += 2)
+                if (array[i] != null)
+                    entries.put(array[i], array[i + 1]);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package de.ovgu.spldev.varied.kernel;
+
+import clojure.lang.APersistentMap;
+import clojure.lang.APersistentSet;
+import clojure.lang.APersistentVector;
+import clojure.lang.IMapEntry;
+import clojure.lang.Keyword;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+
+/**
+ * Writes the kernel's combined effect in FeatureIDE's XML format by walking its feature and
+ * children cache maps, without building an IFeatureModel first. The output matches what
+ * FeatureIDE writes for the model FeatureModelFormat.toFeatureModel would return.
+ */
+public class XmlFeatureModelExporter {
+    private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+    private static final String INDENTATION = "    ";
+
+    private XMLStreamWriter writer;
+    private APersistentMap featuresMap, childrenCacheMap;
+    // features that are reachable from the root, other features are graveyarded
+    private HashSet<String> featureIDs = new HashSet<>();
+
+    private XmlFeatureModelExporter(XMLStreamWriter writer, APersistentMap featuresMap, APersistentMap childrenCacheMap) {
+        this.writer = writer;
+        this.featuresMap = featuresMap;
+        this.childrenCacheMap = childrenCacheMap;
+    }
+
+    public static void exportFeatureModel(APersistentMap combinedEffect, Writer writer) throws IOException {
+        APersistentMap featuresMap = (APersistentMap) combinedEffect.get(Keywords.FEATURES),
+                constraintsMap = (APersistentMap) combinedEffect.get(Keywords.CONSTRAINTS),
+                childrenCacheMap = (APersistentMap) combinedEffect.get(Keywords.CHILDREN_CACHE);
+        if (featuresMap == null || constraintsMap == null || childrenCacheMap == null)
+            throw new RuntimeException("feature model not available in kernel context");
+
+        // XMLStreamWriter can not declare the document standalone="no" like FeatureIDE does
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+        try {
+            XMLStreamWriter xmlStreamWriter = xmlOutputFactory.createXMLStreamWriter(writer);
+            new XmlFeatureModelExporter(xmlStreamWriter, featuresMap, childrenCacheMap).writeFeatureModel(constraintsMap);
+            xmlStreamWriter.flush();
+            xmlStreamWriter.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        writer.write("\n");
+        writer.flush();
+    }
+
+    private void indent(int depth) throws XMLStreamException {
+        writer.writeCharacters("\n");
+        for (int i = 0; i < depth; i++)
+            writer.writeCharacters(INDENTATION);
+    }
+
+    private void writeFeatureModel(APersistentMap constraintsMap) throws XMLStreamException {
+        writer.writeStartElement("featureModel");
+        indent(1);
+        writer.writeEmptyElement("properties");
+        indent(1);
+        writer.writeStartElement("struct");
+        APersistentSet rootIDs = (APersistentSet) childrenCacheMap.get(null);
+        if (rootIDs != null)
+            for (Object rootID : rootIDs)
+                writeFeature((String) rootID, null, 2);
+        indent(1);
+        writer.writeEndElement();
+
+        indent(1);
+        boolean hasConstraints = false;
+        for (Object e : constraintsMap) {
+            APersistentMap constraintMap = (APersistentMap) ((IMapEntry) e).val();
+            Object formula = constraintMap.get(Keywords.FORMULA);
+            if (Boolean.TRUE.equals(constraintMap.get(Keywords.GRAVEYARDED)) || !isLiveFormula(formula))
+                continue;
+            if (!hasConstraints)
+                writer.writeStartElement("constraints");
+            hasConstraints = true;
+            indent(2);
+            writer.writeStartElement("rule");
+            writeFormula(formula, 3);
+            indent(2);
+            writer.writeEndElement();
+        }
+        if (hasConstraints) {
+            indent(1);
+            writer.writeEndElement();
+        } else
+            writer.writeEmptyElement("constraints");
+
+        indent(1);
+        writer.writeEmptyElement("calculations");
+        writer.writeAttribute("Auto", "true");
+        writer.writeAttribute("Constraints", "true");
+        writer.writeAttribute("Features", "true");
+        writer.writeAttribute("Redundant", "true");
+        writer.writeAttribute("Tautology", "true");
+        indent(1);
+        writer.writeEmptyElement("comments");
+        indent(1);
+        writer.writeEmptyElement("featureOrder");
+        writer.writeAttribute("userDefined", "false");
+        writer.writeCharacters("\n");
+        writer.writeEndElement();
+    }
+
+    private static boolean isTrue(Object value) {
+        return value != null && (boolean) value;
+    }
+
+    // like FeatureIDE, groups with less than two children are and-groups
+    private Keyword getGroupType(APersistentMap featureMap, APersistentSet children) {
+        return children != null && children.count() > 1
+                ? (Keyword) featureMap.get(Keywords.GROUP_TYPE)
+                : Keywords.AND;
+    }
+
+    private void writeFeature(String featureID, Keyword parentGroupType, int depth) throws XMLStreamException {
+        APersistentMap featureMap = (APersistentMap) featuresMap.get(featureID);
+        if (!featureIDs.add(featureID))
+            throw new RuntimeException("Duplicate entry for feature: " + featureID);
+        APersistentSet children = (APersistentSet) childrenCacheMap.get(featureID);
+        Keyword groupType = getGroupType(featureMap, children);
+
+        final String tag;
+        if (children == null || children.count() == 0)
+            tag = "feature";
+        else if (groupType == Keywords.OR)
+            tag = "or";
+        else if (groupType == Keywords.ALTERNATIVE)
+            tag = "alt";
+        else
+            tag = "and";
+
+        String description = (String) featureMap.get(Keywords.DESCRIPTION);
+        boolean hasDescription = description != null && !description.trim().isEmpty(),
+                isEmpty = tag.equals("feature") && !hasDescription;
+        indent(depth);
+        if (isEmpty)
+            writer.writeEmptyElement(tag);
+        else
+            writer.writeStartElement(tag);
+
+        // attributes in the order FeatureIDE's DOM serializer puts them
+        if (isTrue(featureMap.get(Keywords.ABSTRACT)))
+            writer.writeAttribute("abstract", "true");
+        if (isTrue(featureMap.get(Keywords.HIDDEN)))
+            writer.writeAttribute("hidden", "true");
+        if (parentGroupType == null || (parentGroupType == Keywords.AND && !isTrue(featureMap.get(Keywords.OPTIONAL))))
+            writer.writeAttribute("mandatory", "true");
+        writer.writeAttribute("name", (String) featureMap.get(Keywords.NAME));
+
+        if (hasDescription) {
+            indent(depth + 1);
+            writer.writeStartElement("description");
+            writer.writeCharacters("\n" + description.replace("\r", "") + "\n");
+            writer.writeEndElement();
+        }
+        if (children != null)
+            for (Object childID : children)
+                writeFeature((String) childID, groupType, depth + 1);
+        if (!isEmpty) {
+            indent(depth);
+            writer.writeEndElement();
+        }
+    }
+
+    private boolean isLiveFormula(Object formula) {
+        if (formula instanceof String)
+            return featureIDs.contains(formula);
+        APersistentVector formulaVector = (APersistentVector) formula;
+        for (int i = 1; i < formulaVector.count(); i++)
+            if (!isLiveFormula(formulaVector.nth(i)))
+                return false;
+        return true;
+    }
+
+    private void writeFormula(Object formula, int depth) throws XMLStreamException {
+        indent(depth);
+        if (formula instanceof String) {
+            writer.writeStartElement("var");
+            writer.writeCharacters((String) ((APersistentMap) featuresMap.get(formula)).get(Keywords.NAME));
+            writer.writeEndElement();
+            return;
+        }
+
+        APersistentVector formulaVector = (APersistentVector) formula;
+        Keyword op = (Keyword) formulaVector.nth(0);
+        if (op != Keywords.DISJ && op != Keywords.CONJ && op != Keywords.EQ && op != Keywords.IMP && op != Keywords.NOT)
+            throw new RuntimeException("unknown operator " + op + " encountered");
+        writer.writeStartElement(op.getName());
+        for (int i = 1; i < formulaVector.count(); i++)
+            writeFormula(formulaVector.nth(i), depth + 1);
+        indent(depth);
+        writer.writeEndElement();
+    }
+}
@@ -0,0 +1,298 @@
+package de.ovgu.spldev.varied.kernel;
+
+import clojure.lang.*;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Reads feature models in FeatureIDE's XML format straight into the kernel's representation.
+ * Unlike FeatureIDE's reader, this builds neither a DOM nor an IFeatureModel, and it assigns
+ * feature and constraint IDs while parsing. The result equals FeatureModelFormat.toKernel applied
+ * to the model FeatureIDE would have loaded. Constructs that are not understood here raise an
+ * UnsupportedFeatureModelException, so callers can fall back to FeatureIDE's reader.
+ */
+public class XmlFeatureModelImporter {
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public static class UnsupportedFeatureModelException extends RuntimeException {
+        UnsupportedFeatureModelException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Feature {
+        String ID;
+        String name;
+        Feature parent;
+        Keyword groupType;
+        int childrenCount = 0;
+        boolean isMandatory = false, isAbstract = false, isHidden = false;
+        String description;
+    }
+
+    private XMLStreamReader reader;
+    private ArrayList<Feature> features = new ArrayList<>();
+    private HashMap<String, String> featureNamesToIDs = new HashMap<>();
+    private ITransientMap constraintsMap = PersistentHashMap.EMPTY.asTransient();
+
+    private XmlFeatureModelImporter(XMLStreamReader reader) {
+        this.reader = reader;
+    }
+
+    public static APersistentMap importFeatureModel(Reader reader) throws XMLStreamException {
+        return importFeatureModel(xmlInputFactory.createXMLStreamReader(reader));
+    }
+
+    public static APersistentMap importFeatureModel(InputStream inputStream) throws XMLStreamException {
+        return importFeatureModel(xmlInputFactory.createXMLStreamReader(inputStream));
+    }
+
+    private static APersistentMap importFeatureModel(XMLStreamReader reader) throws XMLStreamException {
+        try {
+            return new XmlFeatureModelImporter(reader).parseFeatureModel();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static UnsupportedFeatureModelException unsupported(String message) {
+        return new UnsupportedFeatureModelException(message);
+    }
+
+    private APersistentMap parseFeatureModel() throws XMLStreamException {
+        reader.nextTag();
+        if (!reader.getLocalName().equals("featureModel"))
+            throw unsupported("unsupported root element " + reader.getLocalName());
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "struct":
+                    parseStruct();
+                    break;
+                case "constraints":
+                    // feature names must be known before constraints can refer to them
+                    if (features.isEmpty())
+                        throw unsupported("constraints given before feature structure");
+                    parseConstraints();
+                    break;
+                case "properties":
+                case "calculations":
+                case "comments":
+                case "featureOrder":
+                    // not represented in the kernel
+                    skipElement();
+                    break;
+                default:
+                    throw unsupported("unsupported element " + reader.getLocalName());
+            }
+        }
+        if (features.isEmpty())
+            throw unsupported("no feature structure given");
+        return new PersistentArrayMap(new Object[]{
+                Keywords.FEATURES, toFeaturesMap(),
+                Keywords.CONSTRAINTS, constraintsMap.persistent()
+        });
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+                depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+    private void parseStruct() throws XMLStreamException {
+        if (!features.isEmpty())
+            throw unsupported("multiple feature structures given");
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (!features.isEmpty())
+                throw unsupported("multiple root features given");
+            parseFeature(null);
+        }
+    }
+
+    private void parseFeature(Feature parent) throws XMLStreamException {
+        Feature feature = new Feature();
+        switch (reader.getLocalName()) {
+            case "and":
+            case "feature":
+                feature.groupType = Keywords.AND;
+                break;
+            case "or":
+                feature.groupType = Keywords.OR;
+                break;
+            case "alt":
+                feature.groupType = Keywords.ALTERNATIVE;
+                break;
+            default:
+                throw unsupported("unsupported feature type " + reader.getLocalName());
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String value = reader.getAttributeValue(i);
+            switch (reader.getAttributeLocalName(i)) {
+                case "name":
+                    feature.name = value;
+                    break;
+                case "mandatory":
+                    feature.isMandatory = value.equals("true");
+                    break;
+                case "abstract":
+                    feature.isAbstract = value.equals("true");
+                    break;
+                case "hidden":
+                    feature.isHidden = value.equals("true");
+                    break;
+                case "coordinates":
+                    break;
+                default:
+                    throw unsupported("unsupported feature attribute " + reader.getAttributeLocalName(i));
+            }
+        }
+        if (feature.name == null)
+            throw unsupported("feature without name given");
+        if (featureNamesToIDs.containsKey(feature.name))
+            throw unsupported("duplicate entry for feature " + feature.name);
+
+        feature.ID = UUID.randomUUID().toString();
+        feature.parent = parent;
+        if (parent != null)
+            parent.childrenCount++;
+        featureNamesToIDs.put(feature.name, feature.ID);
+        features.add(feature);
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (reader.getLocalName().equals("description"))
+                feature.description = parseDescription(reader.getElementText());
+            else
+                parseFeature(feature);
+        }
+    }
+
+    // mirrors how FeatureIDE reads and trims descriptions, and how FeatureModelFormat stores them
+    private static String parseDescription(String text) {
+        if (text.isEmpty())
+            return null;
+        text = text.replace("\t", "");
+        if (text.length() < 2)
+            throw unsupported("unsupported feature description");
+        text = text.substring(1, text.length() - 1).trim();
+        return text.isEmpty() ? null : text.replace("\r", "");
+    }
+
+    private APersistentMap toFeaturesMap() {
+        ITransientMap featuresMap = PersistentHashMap.EMPTY.asTransient();
+        for (Feature feature : features) {
+            boolean isOptional = feature.parent != null &&
+                    getGroupType(feature.parent) == Keywords.AND && !feature.isMandatory;
+            featuresMap = featuresMap.assoc(feature.ID, new PersistentArrayMap(new Object[]{
+                    Keywords.GROUP_TYPE, getGroupType(feature),
+                    Keywords.PARENT_ID, feature.parent == null ? null : feature.parent.ID,
+                    Keywords.OPTIONAL, isOptional,
+                    Keywords.NAME, feature.name,
+                    Keywords.HIDDEN, feature.isHidden,
+                    Keywords.ABSTRACT, feature.isAbstract,
+                    Keywords.DESCRIPTION, feature.description
+            }));
+        }
+        return (APersistentMap) featuresMap.persistent();
+    }
+
+    // like FeatureIDE, groups with less than two children are and-groups
+    private static Keyword getGroupType(Feature feature) {
+        return feature.childrenCount > 1 ? feature.groupType : Keywords.AND;
+    }
+
+    private void parseConstraints() throws XMLStreamException {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (!reader.getLocalName().equals("rule"))
+                throw unsupported("unsupported constraint element " + reader.getLocalName());
+            for (int i = 0; i < reader.getAttributeCount(); i++)
+                if (!reader.getAttributeLocalName(i).equals("coordinates"))
+                    throw unsupported("unsupported constraint attribute " + reader.getAttributeLocalName(i));
+
+            Object formula = null;
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                if (reader.getLocalName().equals("description"))
+                    // constraint descriptions are not represented in the kernel
+                    reader.getElementText();
+                else if (formula == null)
+                    formula = parseFormula();
+                else
+                    throw unsupported("multiple formulas given for constraint");
+            }
+            if (formula == null)
+                throw unsupported("constraint without formula given");
+
+            constraintsMap = constraintsMap.assoc(UUID.randomUUID().toString(), new PersistentArrayMap(new Object[]{
+                    Keywords.FORMULA, formula,
+                    Keywords.GRAVEYARDED, false
+            }));
+        }
+    }
+
+    private Object parseFormula() throws XMLStreamException {
+        final Keyword op;
+        final int minimumOperands, maximumOperands;
+        switch (reader.getLocalName()) {
+            case "var":
+                String featureName = reader.getElementText();
+                String featureID = featureNamesToIDs.get(featureName);
+                if (featureID == null)
+                    throw unsupported("constraint refers to unknown feature " + featureName);
+                return featureID;
+            case "not":
+                op = Keywords.NOT;
+                minimumOperands = maximumOperands = 1;
+                break;
+            case "imp":
+                op = Keywords.IMP;
+                minimumOperands = maximumOperands = 2;
+                break;
+            case "eq":
+                op = Keywords.EQ;
+                minimumOperands = maximumOperands = 2;
+                break;
+            case "disj":
+                op = Keywords.DISJ;
+                minimumOperands = 1;
+                maximumOperands = Integer.MAX_VALUE;
+                break;
+            case "conj":
+                op = Keywords.CONJ;
+                minimumOperands = 1;
+                maximumOperands = Integer.MAX_VALUE;
+                break;
+            default:
+                throw unsupported("unsupported constraint node " + reader.getLocalName());
+        }
+
+        ITransientCollection formula = ((ITransientCollection) PersistentVector.EMPTY.asTransient()).conj(op);
+        int operands = 0;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (++operands > maximumOperands)
+                throw unsupported("too many operands given for " + op.getName());
+            formula = formula.conj(parseFormula());
+        }
+        if (operands < minimumOperands)
+            throw unsupported("too few operands given for " + op.getName());
+        return formula.persistent();
+    }
+}
@@ -1,11 +1,16 @@
 package de.ovgu.spldev.varied.messaging;
 
 import com.google.gson.annotations.Expose;
+import de.ovgu.spldev.varied.AnalysisService;
 import de.ovgu.spldev.varied.Artifact;
 import de.ovgu.spldev.varied.Collaborator;
+import de.ovgu.spldev.varied.FeatureSearchIndex;
+import de.ovgu.spldev.varied.VersionHistory;
+import de.ovgu.spldev.varied.kernel.FeatureModelDiff;
 import org.pmw.tinylog.Logger;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -21,13 +26,21 @@ public class Api {
         RESET,
         ADD_ARTIFACT,
         REMOVE_ARTIFACT,
+        LIST_ARTIFACTS,
         EXPORT_ARTIFACT,
+        FORK_ARTIFACT,
+        LIST_VERSIONS,
+        FETCH_VERSION,
+        DIFF_VERSIONS,
+        SEARCH_FEATURES,
         COLLABORATOR_JOINED,
         COLLABORATOR_LEFT,
         SET_USER_PROFILE,
         JOIN_REQUEST,
         LEAVE_REQUEST,
         INITIALIZE,
+        SNAPSHOT,
+        ANALYSIS,
         KERNEL,
         VOTERS,
         VOTE,
@@ -56,18 +69,45 @@ public class Api {
         @Expose
         public Artifact.Path[] artifactPaths;
 
-        public AddArtifact(Collection<Artifact.Path> artifactPaths) {
+        @Expose
+        public Long catalogVersion;
+
+        @Expose
+        public Integer nextOffset;
+
+        public AddArtifact(Collection<Artifact.Path> artifactPaths, long catalogVersion, Integer nextOffset) {
             super(TypeEnum.ADD_ARTIFACT, null);
             this.artifactPaths = artifactPaths.toArray(new Artifact.Path[]{});
+            this.catalogVersion = catalogVersion;
+            this.nextOffset = nextOffset;
+        }
+
+        public AddArtifact(Collection<Artifact.Path> artifactPaths, long catalogVersion) {
+            this(artifactPaths, catalogVersion, null);
         }
     }
 
     public static class RemoveArtifact extends Message implements Message.IEncodable, Message.IDecodable {
-        public RemoveArtifact(de.ovgu.spldev.varied.Artifact.Path artifactPath) {
+        @Expose
+        public Long catalogVersion;
+
+        public RemoveArtifact(de.ovgu.spldev.varied.Artifact.Path artifactPath, long catalogVersion) {
             super(TypeEnum.REMOVE_ARTIFACT, artifactPath);
+            this.catalogVersion = catalogVersion;
         }
     }
 
+    public static class ListArtifacts extends Message implements Message.IDecodable {
+        @Expose
+        public Long sinceVersion;
+
+        @Expose
+        public int offset;
+
+        @Expose
+        public Integer limit;
+    }
+
     public static class ExportArtifact extends Message implements Message.IEncodable, Message.IDecodable {
         @Expose
         public String format;
@@ -75,11 +115,62 @@ public class Api {
         @Expose
         public String data;
 
+        // if given, a past version is exported from the artifact's version history
+        @Expose
+        public Long version;
+
+        @Expose
+        public Long timestamp;
+
         public ExportArtifact(de.ovgu.spldev.varied.Artifact.Path artifactPath) {
             super(TypeEnum.EXPORT_ARTIFACT, artifactPath);
         }
     }
 
+    public static class ForkArtifact extends Message implements Message.IDecodable {
+        @Expose
+        public de.ovgu.spldev.varied.Artifact.Path forkArtifactPath;
+    }
+
+    public static class ListVersions extends Message implements Message.IEncodable, Message.IDecodable {
+        @Expose
+        public List<VersionHistory.Checkpoint> versions;
+    }
+
+    public static class FetchVersion extends Message implements Message.IDecodable {
+        @Expose
+        public Long version;
+
+        @Expose
+        public Long timestamp;
+    }
+
+    public static class DiffVersions extends Message implements Message.IEncodable, Message.IDecodable {
+        @Expose
+        public Long fromVersion;
+
+        // if not given, compares with the current version
+        @Expose
+        public Long toVersion;
+
+        @Expose
+        public FeatureModelDiff diff;
+    }
+
+    public static class SearchFeatures extends Message implements Message.IEncodable, Message.IDecodable {
+        @Expose
+        public String query;
+
+        @Expose
+        public boolean fuzzy;
+
+        @Expose
+        public Integer limit;
+
+        @Expose
+        public List<FeatureSearchIndex.Match> matches;
+    }
+
     public static class CollaboratorJoined extends Message implements Message.IEncodable {
         @Expose
         Collaborator collaborator;
@@ -106,6 +197,8 @@ public class Api {
     }
 
     public static class JoinRequest extends Message implements Message.IDecodable {
+        @Expose
+        public boolean spectator;
     }
 
     public static class LeaveRequest extends Message implements Message.IDecodable {
@@ -121,6 +214,46 @@ public class Api {
         }
     }
 
+    public static class Snapshot extends Message implements Message.IEncodable {
+        @Expose
+        long version;
+
+        @Expose
+        String combinedEffect;
+
+        public Snapshot(Artifact.Path artifactPath, long version, String combinedEffect) {
+            super(TypeEnum.SNAPSHOT, artifactPath);
+            this.version = version;
+            this.combinedEffect = combinedEffect;
+        }
+    }
+
+    public static class Analysis extends Message implements Message.IEncodable {
+        @Expose
+        long version;
+
+        @Expose
+        boolean valid;
+
+        @Expose
+        String[] coreFeatureIDs;
+
+        @Expose
+        String[] deadFeatureIDs;
+
+        @Expose
+        String[] falseOptionalFeatureIDs;
+
+        public Analysis(Artifact.Path artifactPath, AnalysisService.Result result) {
+            super(TypeEnum.ANALYSIS, artifactPath);
+            this.version = result.getVersion();
+            this.valid = result.isValid();
+            this.coreFeatureIDs = result.getCoreFeatureIDs();
+            this.deadFeatureIDs = result.getDeadFeatureIDs();
+            this.falseOptionalFeatureIDs = result.getFalseOptionalFeatureIDs();
+        }
+    }
+
     public static class Kernel extends Message implements Message.IEncodable, Message.IDecodable {
         @Expose
         public String message;
@@ -70,6 +70,10 @@ abstract public class Message {
         return type;
     }
 
+    public Api.TypeEnum getTypeEnum() {
+        return type.typeEnum;
+    }
+
     Message() {
     }
 
@@ -4,6 +4,8 @@ import com.google.gson.*;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.typeadapters.RuntimeTypeAdapterFactory;
 import de.ovgu.featureide.fm.core.base.IFeatureModel;
+import de.ovgu.spldev.varied.Metrics;
+import de.ovgu.spldev.varied.Trace;
 
 import javax.websocket.Decoder;
 import javax.websocket.Encoder;
@@ -35,12 +37,27 @@ public class MessageSerializer {
             .registerTypeAdapter(Message.Type.class, new MessageTypeTypeAdapter())
             .create();
 
+    /**
+     * encodes a message outside of a WebSocket connection (e.g., for recording it)
+     */
+    public static String toJson(Message message) {
+        return gson.toJson(message);
+    }
+
+    public static Message fromJson(String json) {
+        return gson.fromJson(json, typeToken.getType());
+    }
+
     /**
      * instructs Java's WebSocket library to encode messages with JSON
      */
     public static class MessageEncoder implements Encoder.Text<Message> {
         public String encode(Message message) {
-            return gson.toJson(message);
+            long startTime = System.nanoTime();
+            String json = gson.toJson(message);
+            Metrics.getInstance().recordEncode(System.nanoTime() - startTime);
+            Trace.span("encode", startTime);
+            return json;
         }
 
         public void init(EndpointConfig endpointConfig) {
@@ -55,7 +72,12 @@ public class MessageSerializer {
      */
     public static class MessageDecoder implements Decoder.Text<Message> {
         public Message decode(String s) {
-            return gson.fromJson(s, typeToken.getType());
+            long startTime = System.nanoTime();
+            Message message = gson.fromJson(s, typeToken.getType());
+            long duration = System.nanoTime() - startTime;
+            Metrics.getInstance().recordDecode(duration);
+            Trace.recordDecode(duration);
+            return message;
         }
 
         public boolean willDecode(String s) {
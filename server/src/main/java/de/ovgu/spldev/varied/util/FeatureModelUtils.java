@@ -1,37 +1,88 @@
 package de.ovgu.spldev.varied.util;
 
+import clojure.lang.APersistentMap;
 import de.ovgu.featureide.fm.core.ExtensionManager;
 import de.ovgu.featureide.fm.core.PluginID;
+import de.ovgu.featureide.fm.core.base.IConstraint;
 import de.ovgu.featureide.fm.core.base.IFeature;
 import de.ovgu.featureide.fm.core.base.IFeatureModel;
 import de.ovgu.featureide.fm.core.base.impl.FMFormatManager;
 import de.ovgu.featureide.fm.core.io.IFeatureModelFormat;
 import de.ovgu.featureide.fm.core.io.IPersistentFormat;
 import de.ovgu.featureide.fm.core.io.manager.FeatureModelManager;
+import de.ovgu.spldev.varied.kernel.FeatureModelFormat;
+import de.ovgu.spldev.varied.kernel.XmlFeatureModelExporter;
+import de.ovgu.spldev.varied.kernel.XmlFeatureModelImporter;
 import org.pmw.tinylog.Logger;
+import org.prop4j.Literal;
+import org.prop4j.Node;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.UUID;
+import java.util.*;
+import java.util.stream.Collectors;
 
 public class FeatureModelUtils {
+    public static final String XML_FORMAT = "XmlFeatureModelFormat";
+
+    /**
+     * Renames many features at once. RenamingsManager.renameFeature walks all constraints and the
+     * feature order for every single renaming, which is quadratic for large models. Instead, this
+     * rebuilds the feature table and rewrites constraint literals and the feature order in one pass.
+     */
+    public static void renameFeatures(IFeatureModel featureModel, Map<String, String> renamings) {
+        Hashtable<String, IFeature> featureTable = new Hashtable<>();
+        for (IFeature feature : new ArrayList<>(featureModel.getFeatureTable().values())) {
+            String oldName = feature.getName(), newName = renamings.getOrDefault(oldName, oldName);
+            if (featureTable.put(newName, feature) != null)
+                throw new RuntimeException("could not rename feature " + oldName + " to " + newName);
+            if (!newName.equals(oldName))
+                feature.setName(newName);
+        }
+        featureModel.setFeatureTable(featureTable);
+        for (IConstraint constraint : featureModel.getConstraints())
+            renameLiterals(constraint.getNode(), renamings);
+        List<String> featureOrderList = featureModel.getFeatureOrderList();
+        if (!featureOrderList.isEmpty())
+            featureModel.setFeatureOrderList(featureOrderList.stream()
+                    .map(featureName -> renamings.getOrDefault(featureName, featureName))
+                    .collect(Collectors.toList()));
+    }
+
+    private static void renameLiterals(Node node, Map<String, String> renamings) {
+        if (node instanceof Literal) {
+            Literal literal = (Literal) node;
+            String newName = renamings.get(String.valueOf(literal.var));
+            if (newName != null)
+                literal.var = newName;
+        } else if (node != null && node.getChildren() != null)
+            for (Node child : node.getChildren())
+                renameLiterals(child, renamings);
+    }
+
     private static void renameFeaturesToFeatureIDs(IFeatureModel featureModel) {
-        de.ovgu.featureide.fm.core.base.FeatureUtils.getFeatureNames(featureModel).forEach(featureName -> {
-            FeatureUtils.setFeatureName(featureModel.getFeature(featureName), featureName);
-            if (!featureModel.getRenamingsManager().renameFeature(featureName, UUID.randomUUID().toString()))
-                throw new RuntimeException("could not rename feature " + featureName + " to ID");
-        });
+        HashMap<String, String> renamings = new HashMap<>();
+        for (IFeature feature : featureModel.getFeatures()) {
+            FeatureUtils.setFeatureName(feature, feature.getName());
+            renamings.put(feature.getName(), UUID.randomUUID().toString());
+        }
+        renameFeatures(featureModel, renamings);
         featureModel.getConstraints().forEach(constraint ->
                 FeatureUtils.setConstraintID(constraint, UUID.randomUUID()));
     }
 
     private static void renameFeatureIDsToFeatures(IFeatureModel featureModel) {
-        de.ovgu.featureide.fm.core.base.FeatureUtils.getFeatureNames(featureModel).forEach(featureID -> {
-            IFeature feature = featureModel.getFeature(featureID);
-            String featureName = FeatureUtils.getFeatureName(feature);
-            if (!featureModel.getRenamingsManager().renameFeature(featureID, featureName))
-                throw new RuntimeException("could not rename feature " + featureID + " to " + featureName);
-            FeatureUtils.removeFeatureName(feature);
-        });
+        HashMap<String, String> renamings = new HashMap<>();
+        for (IFeature feature : featureModel.getFeatures())
+            renamings.put(feature.getName(), FeatureUtils.getFeatureName(feature));
+        renameFeatures(featureModel, renamings);
+        featureModel.getFeatures().forEach(FeatureUtils::removeFeatureName);
         featureModel.getConstraints().forEach(FeatureUtils::removeConstraintID);
     }
 
@@ -56,22 +107,85 @@ public class FeatureModelUtils {
         return featureModel;
     }
 
+    private static boolean isXmlFeatureModel(String fileName) {
+        return fileName.toLowerCase().endsWith(".xml");
+    }
+
+    /**
+     * Loads a feature model directly into the kernel's representation. FeatureIDE XML is parsed
+     * with a streaming importer, other formats (and XML the importer does not understand) are
+     * loaded with FeatureIDE and converted afterwards.
+     */
+    public static APersistentMap loadKernelFeatureModel(Path path) {
+        if (isXmlFeatureModel(path.getFileName().toString())) {
+            Logger.debug("importing feature model from {}", path);
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                return XmlFeatureModelImporter.importFeatureModel(inputStream);
+            } catch (IOException | XMLStreamException | XmlFeatureModelImporter.UnsupportedFeatureModelException e) {
+                Logger.debug("could not import feature model ({}), falling back to FeatureIDE", e.getMessage());
+            }
+        }
+        return FeatureModelFormat.toKernel(loadFeatureModel(path));
+    }
+
+    public static APersistentMap loadKernelFeatureModel(String source, String fileName) {
+        if (isXmlFeatureModel(fileName)) {
+            Logger.debug("importing feature model from a string");
+            try {
+                return XmlFeatureModelImporter.importFeatureModel(new StringReader(source));
+            } catch (XMLStreamException | XmlFeatureModelImporter.UnsupportedFeatureModelException e) {
+                Logger.debug("could not import feature model ({}), falling back to FeatureIDE", e.getMessage());
+            }
+        }
+        return FeatureModelFormat.toKernel(loadFeatureModel(source, fileName));
+    }
+
+    private static IFeatureModelFormat getFormat(String formatName) {
+        try {
+            return FMFormatManager.getInstance().getFormatById(PluginID.PLUGIN_ID + ".format.fm." + formatName);
+        } catch (ExtensionManager.NoSuchExtensionException e) {
+            throw new RuntimeException("invalid feature model format given");
+        }
+    }
+
+    public static String getFileExtension(String formatName) {
+        return getFormat(formatName).getSuffix();
+    }
+
     public static String serializeFeatureModel(IFeatureModel featureModel, String formatName) {
         Logger.debug("serializing feature model with format {}", formatName);
         if (featureModel == null)
             throw new RuntimeException("no feature model given");
         featureModel = featureModel.clone();
         renameFeatureIDsToFeatures(featureModel);
-        IFeatureModelFormat format;
-        try {
-            format = FMFormatManager.getInstance().getFormatById(PluginID.PLUGIN_ID + ".format.fm." + formatName);
-        } catch (ExtensionManager.NoSuchExtensionException e) {
-            throw new RuntimeException("invalid feature model format given");
-        }
-        return format.write(featureModel);
+        return getFormat(formatName).write(featureModel);
     }
 
     public static String serializeFeatureModel(IFeatureModel featureModel) {
-        return serializeFeatureModel(featureModel, "XmlFeatureModelFormat");
+        return serializeFeatureModel(featureModel, XML_FORMAT);
+    }
+
+    /**
+     * Writes the kernel's combined effect to a writer. FeatureIDE XML is written directly,
+     * other formats require an IFeatureModel to be built first.
+     */
+    public static void exportFeatureModel(APersistentMap combinedEffect, String formatName, Writer writer) throws IOException {
+        Logger.debug("exporting feature model with format {}", formatName);
+        if (combinedEffect == null)
+            throw new RuntimeException("no feature model given");
+        if (XML_FORMAT.equals(formatName))
+            XmlFeatureModelExporter.exportFeatureModel(combinedEffect, writer);
+        else
+            writer.write(serializeFeatureModel(FeatureModelFormat.combinedEffectToFeatureModel(combinedEffect), formatName));
+    }
+
+    public static String exportFeatureModel(APersistentMap combinedEffect, String formatName) {
+        StringWriter writer = new StringWriter();
+        try {
+            exportFeatureModel(combinedEffect, formatName, writer);
+        } catch (IOException e) {
+            throw new RuntimeException("could not export feature model");
+        }
+        return writer.toString();
     }
 }